@@ -0,0 +1,127 @@
+package com.app.beta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Compares the copy strategies of large files, one copy of a file per
+ * invocation. The source file is written in the directory of the
+ * copy.bench.sourceDir system property, and copied into the directory of
+ * copy.bench.targetDir; both are the temporary directory by default. For
+ * a cross device comparison, set them to directories on two disks; the
+ * overlapped reads and writes only gain there.
+ * The source is read from the page cache after the first copy, and the
+ * targets are not forced to the disk by any strategy; so the times are
+ * those of a copy which the page cache absorbs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CopyStrategyBenchmark {
+
+
+    @Param({ "64", "256", "1024" })
+    int fileMB;
+
+    @Param({ "transferTo", "mapped", "overlapped" })
+    String strategy;
+
+    private Path source;
+    private Path target;
+    private CopyStrategy copyStrategy;
+
+
+    @Setup(Level.Trial)
+    public void writeSource()
+            throws IOException {
+
+        Path sourceDir = Paths.get(System.getProperty("copy.bench.sourceDir",
+                System.getProperty("java.io.tmpdir")));
+        Path targetDir = Paths.get(System.getProperty("copy.bench.targetDir",
+                System.getProperty("java.io.tmpdir")));
+        source = Files.createTempFile(sourceDir, "copy-bench-", ".bin");
+        target = targetDir.resolve(source.getFileName() + ".copy");
+        copyStrategy = newStrategy(strategy);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        new Random(fileMB).nextBytes(buffer.array());
+
+        try (FileChannel out = FileChannel.open(source, WRITE)) {
+
+            for (int i = 0; i < fileMB; i++) {
+
+                buffer.clear();
+                out.write(buffer);
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void deleteTarget()
+            throws IOException {
+
+        Files.deleteIfExists(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles()
+            throws IOException {
+
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(source);
+    }
+
+    @Benchmark
+    public boolean copy()
+            throws IOException {
+
+        return copyStrategy.copy(source, target,
+                Files.readAttributes(source, BasicFileAttributes.class),
+                new TestCopyContext(CopyEngine.DEFAULT_CHUNK_SIZE));
+    }
+
+    private static CopyStrategy newStrategy(String name) {
+
+        switch (name) {
+
+            case "transferTo":
+                return new ChannelCopyStrategy();
+
+            case "mapped":
+                return new MappedCopyStrategy();
+
+            case "overlapped":
+                return new AsyncCopyStrategy();
+
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+    }
+}
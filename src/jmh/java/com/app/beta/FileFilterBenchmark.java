@@ -0,0 +1,101 @@
+package com.app.beta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+/*
+ * The regression benchmark of the pruning of the directories without
+ * filtered files: the filter of a synthetic tree of deep subtrees, as
+ * built by FileFilterApplicationTest, by FileFilterApplication and by the
+ * search of the filtered files for each directory which it replaced. The
+ * tree has as many subtrees as the trees parameter, of a few thousand
+ * paths each; so the filter's time grows with it, and the search's with
+ * its square. The tree is created in the directory of the copy.bench.sourceDir
+ * system property, the temporary directory by default.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileFilterBenchmark {
+
+
+    @Param({ "5", "20" })
+    int trees;
+
+    private Path sourceDir;
+    private final Set<Path> selectedFiles = new HashSet<>();
+    private final FileFilters filters = new FileFilters();
+
+
+    @Setup(Level.Trial)
+    public void createTree()
+            throws IOException {
+
+        sourceDir = Files.createTempDirectory(Paths.get(System.getProperty("copy.bench.sourceDir",
+                System.getProperty("java.io.tmpdir"))), "filter-bench-");
+        selectedFiles.add(sourceDir);
+        filters.setFileTypes(List.of("txt"));
+
+        for (int i = 0; i < trees; i++) {
+
+            FileFilterApplicationTest.createTree(
+                    Files.createDirectory(sourceDir.resolve("tree" + i)), 0, true,
+                    new Random(i), selectedFiles);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree()
+            throws IOException {
+
+        try (Stream<Path> paths = Files.walk(sourceDir)) {
+
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public int filter()
+            throws IOException {
+
+        return new FileFilterApplication().apply(sourceDir, selectedFiles, filters).size();
+    }
+
+    @Benchmark
+    public int searchFilteredFiles()
+            throws IOException {
+
+        return FileFilterApplicationTest.applyWithSearch(sourceDir, selectedFiles, filters,
+                new HashSet<>()).size();
+    }
+}
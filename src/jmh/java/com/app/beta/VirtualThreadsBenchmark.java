@@ -0,0 +1,123 @@
+package com.app.beta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+/*
+ * Compares the copy of a tree of small files, and its filter, by the
+ * worker threads and by the virtual threads; one copy or filter of the
+ * whole tree per invocation. The tree is created in the directory of the
+ * copy.bench.sourceDir system property, the temporary directory by
+ * default. The virtual threads need JDK 21 or later; on an earlier JDK
+ * their runs fail, and the workers' are still measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadsBenchmark {
+
+
+    @Param({ "100000" })
+    int filesCount;
+
+    @Param({ "workers", "virtual" })
+    String threads;
+
+    private Path dir;
+    private Path sourceDir;
+    private Path targetDir;
+    private Set<Path> files;
+
+
+    @Setup(Level.Trial)
+    public void createTree()
+            throws IOException {
+
+        if (threads.equals("virtual") && (! VirtualThreads.isSupported())) {
+
+            throw new IllegalStateException("Virtual threads are not supported by Java " +
+                    Runtime.version());
+        }
+
+        dir = Files.createTempDirectory(Paths.get(System.getProperty("copy.bench.sourceDir",
+                System.getProperty("java.io.tmpdir"))), "virtual-bench-");
+        sourceDir = Files.createDirectory(dir.resolve("source"));
+        targetDir = dir.resolve("target");
+        files = VirtualThreadsTest.createTree(sourceDir, filesCount);
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyTarget()
+            throws IOException {
+
+        delete(targetDir);
+        Files.createDirectory(targetDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree()
+            throws IOException {
+
+        delete(dir);
+    }
+
+    @Benchmark
+    public int copy()
+            throws IOException, InterruptedException {
+
+        CopyEngine engine = new CopyEngine(sourceDir, targetDir);
+        engine.setVirtualThreads(threads.equals("virtual"));
+        engine.copy(files, () -> false);
+        return engine.getCopiedFilesCount();
+    }
+
+    @Benchmark
+    public int filter()
+            throws IOException {
+
+        FileFilterApplication filterApplication = new FileFilterApplication();
+        filterApplication.setVirtualThreads(threads.equals("virtual"));
+        return filterApplication.apply(sourceDir, new FileFilters()).size();
+    }
+
+    private static void delete(Path path)
+            throws IOException {
+
+        if (! Files.exists(path)) {
+
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(path)) {
+
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+
+                Files.delete(p);
+            }
+        }
+    }
+}
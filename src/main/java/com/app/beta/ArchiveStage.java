@@ -0,0 +1,195 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+
+/*
+ * The archive stage of a copy, which adds the copied target files to a ZIP
+ * file by its own thread, as the copy engine's workers copy them. A copy
+ * runs as a pipeline of stages joined by bounded queues: the walk, by the
+ * calling thread, hands the files over to the workers; the workers hand
+ * the copied files over to this stage. A stage waits while the queue to
+ * the next one is full, so a slow stage holds back the ones before it
+ * instead of taking their work; the depth of each queue shows where the
+ * bottleneck is, see CopyEngine.getQueuedFilesCount() and
+ * getQueuedFilesCount() here. One instance per copy.
+ */
+class ArchiveStage {
+
+
+    private final Path targetDir;
+    private final Path zipFile;
+    private final BooleanSupplier isStopped;
+
+    // Notified with the error of the archive, which fails the copy.
+    private final Consumer<IOException> failureListener;
+
+    // Copied files waiting to be archived; null once the stage is done.
+    private volatile BlockingQueue<Path> queue;
+    private final AtomicInteger archivedFilesCount = new AtomicInteger();
+    private Thread thread;
+
+    // While waiting on the queue, a stop is checked this often.
+    private static final long POLL_MILLIS = 100L;
+
+    // When the queue is full, the workers wait for the archive stage.
+    private static final int QUEUED_FILES = 1024;
+
+    // Marks the end of the files in the queue.
+    private static final Path END_OF_FILES = Paths.get("");
+
+
+    ArchiveStage(Path targetDir,
+                 Path zipFile,
+                 BooleanSupplier isStopped,
+                 Consumer<IOException> failureListener) {
+
+        this.targetDir = targetDir;
+        this.zipFile = zipFile;
+        this.isStopped = isStopped;
+        this.failureListener = failureListener;
+    }
+
+    int getArchivedFilesCount() {
+
+        return archivedFilesCount.get();
+    }
+
+    /*
+     * The count of the copied files waiting to be archived.
+     */
+    int getQueuedFilesCount() {
+
+        BlockingQueue<Path> q = queue;
+
+        return (q == null) ? 0 : q.size();
+    }
+
+    /*
+     * Starts the stage's thread, which adds the target files from the
+     * queue to the ZIP file until the end of the files. When the copy is
+     * stopped the incomplete ZIP file is deleted.
+     */
+    void start()
+            throws IOException {
+
+        BlockingQueue<Path> q = new ArrayBlockingQueue<>(QUEUED_FILES);
+        ZipFileCreator.ArchiveWriter writer = new ZipFileCreator.ArchiveWriter(zipFile);
+        Files.deleteIfExists(zipFile);
+        queue = q;
+
+        thread = new Thread(() -> {
+
+            boolean completed = false;
+
+            try {
+                while (! isStopped.getAsBoolean()) {
+
+                    Path target = q.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                    if (target == END_OF_FILES) {
+
+                        writer.close();
+                        completed = true;
+                        break;
+                    }
+
+                    if (target != null) {
+
+                        writer.add(targetDir, target);
+                        archivedFilesCount.incrementAndGet();
+                    }
+                }
+            }
+            catch (IOException e) {
+
+                failureListener.accept(e);
+            }
+            catch (InterruptedException e) {
+
+                // the copy is cancelled
+            }
+            finally {
+                if (! completed) {
+
+                    try {
+                        writer.delete();
+                    }
+                    catch (IOException e) {
+
+                        // the copy is stopped already
+                    }
+                }
+            }
+        }, "copy-archiver");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Hands over the copied target file to the stage; the worker waits
+     * while the queue is full, until the copy stops.
+     */
+    void add(Path target) {
+
+        BlockingQueue<Path> q = queue;
+
+        if (q == null) {
+
+            return;
+        }
+
+        try {
+            while (! q.offer(target, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                if (isStopped.getAsBoolean()) {
+
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Marks the end of the files, after the workers are done, and waits
+     * for the stage to complete the ZIP file; or, if the copy is stopped
+     * or the walk failed, i.e. not all the files were added, to delete it.
+     */
+    void finish(boolean allFilesAdded)
+            throws InterruptedException {
+
+        BlockingQueue<Path> q = queue;
+
+        try {
+            if (! allFilesAdded) {
+
+                thread.interrupt();
+            }
+
+            while (thread.isAlive() &&
+                    (! q.offer(END_OF_FILES, POLL_MILLIS, TimeUnit.MILLISECONDS))) {
+
+                // the stage is adding the queued files
+            }
+
+            thread.join();
+        }
+        finally {
+            queue = null;
+        }
+    }
+}
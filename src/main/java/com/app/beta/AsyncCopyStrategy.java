@@ -0,0 +1,153 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Copies a file with AsynchronousFileChannel reads and writes through two
+ * buffers: while one buffer is written to the target, the next block of
+ * the source is read into the other. When the source and the target are on
+ * different devices, both are kept busy instead of each being idle while
+ * the other works; the copy engine uses it for the large files in that
+ * case. The progress is reported, the position recorded and
+ * the copy can be stopped after each buffer, as in ChannelCopyStrategy.
+ */
+public class AsyncCopyStrategy implements CopyStrategy {
+
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        boolean completed = true;
+        long position = context.getResumePosition(source, attrs);
+        int bufferSize = Math.min(BUFFER_SIZE, context.getChunkSize());
+        ByteBuffer [] buffers = {
+                ByteBuffer.allocateDirect(bufferSize),
+                ByteBuffer.allocateDirect(bufferSize) };
+
+        try (AsynchronousFileChannel in = AsynchronousFileChannel.open(source, READ);
+             AsynchronousFileChannel out = (position > 0) ?
+                     AsynchronousFileChannel.open(target, WRITE) :
+                     AsynchronousFileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING)) {
+
+            long size = in.size();
+            int current = 0;
+            Future<Integer> pendingRead = (position < size) ?
+                    in.read(buffers[current], position) : null;
+            Future<Integer> pendingWrite = null;
+            long writePosition = 0;
+
+            while (pendingRead != null) {
+
+                int count = await(pendingRead);
+                ByteBuffer readBuffer = buffers[current];
+
+                // The previous write is completed before its buffer is
+                // reused for the next read.
+                if (pendingWrite != null) {
+
+                    completeWrite(out, pendingWrite, buffers[1 - current], writePosition);
+                    context.positionReached(source, attrs, position);
+                    pendingWrite = null;
+                }
+
+                if (count < 0) {
+
+                    break; // the source was truncated after it was opened
+                }
+
+                if (context.isStopped()) {
+
+                    completed = false;
+                    break;
+                }
+
+                readBuffer.flip();
+                writePosition = position;
+                position += count;
+
+                current = 1 - current;
+                buffers[current].clear();
+                pendingRead = (position < size) ?
+                        in.read(buffers[current], position) : null;
+                pendingWrite = out.write(readBuffer, writePosition);
+                context.bytesCopied(count);
+            }
+
+            if (pendingWrite != null) {
+
+                completeWrite(out, pendingWrite, buffers[1 - current], writePosition);
+                context.positionReached(source, attrs, position);
+            }
+
+            if (completed) {
+
+                out.truncate(position);
+            }
+        }
+
+        if ((! completed) && (! context.isResumable())) {
+
+            Files.deleteIfExists(target);
+        }
+
+        return completed;
+    }
+
+    /*
+     * Waits for the write of the buffer to complete. A write may write
+     * fewer bytes than the buffer has, then the remaining are written.
+     */
+    private static void completeWrite(AsynchronousFileChannel out,
+                                      Future<Integer> pendingWrite,
+                                      ByteBuffer buffer,
+                                      long position)
+            throws IOException {
+
+        await(pendingWrite);
+
+        while (buffer.hasRemaining()) {
+
+            await(out.write(buffer, position + buffer.position()));
+        }
+    }
+
+    private static int await(Future<Integer> future)
+            throws IOException {
+
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+
+            if (e.getCause() instanceof IOException) {
+
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+        catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copy interrupted: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Copies a file through a buffer which is reused for every file copied
+ * with this instance. The copy engine reuses its instances from batch to
+ * batch of small files, one batch at a time each, so that a small file
+ * costs two opens, a read and a write; the copy stops at the size of the
+ * file, without a read to the end of file, unless the read fills the
+ * buffer. An instance is not thread safe.
+ */
+public class BufferCopyStrategy implements CopyStrategy {
+
+
+    private final ByteBuffer buffer;
+
+
+    public BufferCopyStrategy(int bufferSize) {
+
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        long copied = 0;
+
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING)) {
+
+            while (true) {
+
+                buffer.clear();
+
+                if (in.read(buffer) < 0) {
+
+                    break;
+                }
+
+                buffer.flip();
+                copied += buffer.remaining();
+                boolean full = (buffer.limit() == buffer.capacity());
+
+                while (buffer.hasRemaining()) {
+
+                    out.write(buffer);
+                }
+
+                // Read again only if the file may continue: it is larger
+                // than the buffer or has grown since its size was read
+                if ((copied >= attrs.size()) && (! full)) {
+
+                    break;
+                }
+            }
+        }
+
+        context.bytesCopied(copied);
+        return true;
+    }
+}
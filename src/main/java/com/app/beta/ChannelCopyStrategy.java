@@ -0,0 +1,78 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Copies a file in chunks with FileChannel.transferTo. Where the operating
+ * system supports it the bytes are transferred within the kernel, without
+ * being copied to and from a Java buffer. The progress is reported and the
+ * copy can be stopped after each chunk; with the default chunk size a chunk
+ * takes well under a second on local disks.
+ * The position reached is recorded after each chunk. A copy which was
+ * stopped part way through is resumed from that position, and when the
+ * copy is resumable the partially copied target is kept.
+ */
+public class ChannelCopyStrategy implements CopyStrategy {
+
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        boolean completed = true;
+        long position = context.getResumePosition(source, attrs);
+
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = (position > 0) ?
+                     FileChannel.open(target, WRITE) :
+                     FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING)) {
+
+            long size = in.size();
+            out.position(position);
+
+            while (position < size) {
+
+                if (context.isStopped()) {
+
+                    completed = false;
+                    break;
+                }
+
+                long count = Math.min(context.getChunkSize(), size - position);
+                long transferred = in.transferTo(position, count, out);
+
+                if (transferred == 0) {
+
+                    // The source was truncated after it was opened
+                    break;
+                }
+
+                position += transferred;
+                context.bytesCopied(transferred);
+                context.positionReached(source, attrs, position);
+            }
+
+            if (completed) {
+
+                out.truncate(position);
+            }
+        }
+
+        if ((! completed) && (! context.isResumable())) {
+
+            Files.deleteIfExists(target);
+        }
+
+        return completed;
+    }
+}
@@ -0,0 +1,51 @@
+package com.app.beta;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+
+/*
+ * Enum class represents the checksums the copied files can be verified
+ * with. CRC32C is fast and finds accidental corruption; SHA-256 is slower
+ * and also proves the content. Also see FileDigest and CopyManifest.
+ */
+public enum ChecksumAlgorithm {
+
+    CRC32C("CRC32C"),
+    SHA_256("SHA-256");
+
+    private final String algorithmName;
+
+    ChecksumAlgorithm(String algorithmName) {
+
+        this.algorithmName = algorithmName;
+    }
+
+    @Override
+    public String toString() {
+
+        return algorithmName;
+    }
+
+    /* Map with the algorithm name as key and enum constant as value */
+    private static final Map<String, ChecksumAlgorithm> map;
+
+    /* Initially, populates the map */
+    static {
+        map = EnumSet.allOf(ChecksumAlgorithm.class)
+                .stream()
+                .collect(Collectors.toMap(
+                        a -> a.algorithmName.toUpperCase(), Function.identity()));
+    }
+
+    /*
+     * The lookup for the map. Returns the enum constant for the given
+     * algorithm name, in any case, for example: sha-256.
+     */
+    public static ChecksumAlgorithm lookup(String s) {
+
+        return map.get(s.toUpperCase());
+    }
+}
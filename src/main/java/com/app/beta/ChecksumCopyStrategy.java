@@ -0,0 +1,115 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Copies a file through a buffer and computes its checksum on the bytes
+ * in the buffer, between the read and the write; so the checksum costs no
+ * extra read of the source or the target. The checksum is passed to the
+ * context when the file is copied, for the manifest; see CopyManifest.
+ * Each thread has its own buffer, and each file its own FileDigest. The
+ * progress is reported, the position recorded and the copy can be stopped
+ * after each buffer, as in ChannelCopyStrategy. When a copy is resumed,
+ * the source up to the position is read again for the checksum.
+ */
+public class ChecksumCopyStrategy implements CopyStrategy {
+
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final ChecksumAlgorithm algorithm;
+    private final ThreadLocal<ByteBuffer> buffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+
+    public ChecksumCopyStrategy(ChecksumAlgorithm algorithm) {
+
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        boolean completed = true;
+        long position = context.getResumePosition(source, attrs);
+        ByteBuffer buffer = buffers.get();
+        FileDigest digest = new FileDigest(algorithm);
+
+        if ((position > 0) &&
+                (! digest.update(source, position, buffer, context::isStopped))) {
+
+            return false;
+        }
+
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = (position > 0) ?
+                     FileChannel.open(target, WRITE) :
+                     FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING)) {
+
+            long size = in.size();
+
+            while (true) {
+
+                if (context.isStopped()) {
+
+                    completed = false;
+                    break;
+                }
+
+                buffer.clear();
+                int count = in.read(buffer, position);
+
+                if (count < 0) {
+
+                    break;
+                }
+
+                buffer.flip();
+                digest.update(buffer);
+
+                while (buffer.hasRemaining()) {
+
+                    out.write(buffer, position + buffer.position());
+                }
+
+                position += count;
+                context.bytesCopied(count);
+
+                if (size > BUFFER_SIZE) {
+
+                    context.positionReached(source, attrs, position);
+                }
+            }
+
+            if (completed) {
+
+                out.truncate(position);
+            }
+        }
+
+        if (! completed) {
+
+            if (! context.isResumable()) {
+
+                Files.deleteIfExists(target);
+            }
+
+            return false;
+        }
+
+        context.fileDigested(source, attrs, digest.getValue());
+        return true;
+    }
+}
@@ -0,0 +1,449 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+
+/*
+ * The copy files app's command line program. Copies the files of a source
+ * directory to a target directory without the GUI, for example from a cron
+ * job. The same file filters, copy engine and ZIP file creator are used as
+ * in the Copy dialog, but no JavaFX classes are loaded; the progress is
+ * shown on the console. All the files of the source directory are selected.
+ * An earlier copy to the target which did not complete is resumed.
+ *
+ * Usage:
+ *   java -cp <classes> com.app.beta.CopyCommand <source dir> <target dir>
+ *       [--date=ALL_DAYS|TODAY|LAST_7_DAYS|LAST_30_DAYS]
+ *       [--types=java,txt,...] [--zip] [--sync] [--workers=n]
+ *       [--virtual-threads] [--checksum=CRC32C|SHA-256] [--verify] [--move]
+ *       [--archive] [--jmx]
+ * With --move the files are moved: renamed on the same file store, or
+ * copied and then deleted from the source; see FileMover. With --archive
+ * the files are not copied, but written into a ZIP file in the target
+ * directory, named after the source directory. With --jmx, or when JMX
+ * remote is turned on for the JVM, the CopyMetrics MBean is registered;
+ * otherwise it is not, as the MBean server would add to the start up.
+ * The exit status is 0 if the copy succeeds, 1 if it fails or the verify
+ * finds mismatches, and 2 for invalid arguments.
+ */
+public class CopyCommand {
+
+
+    private static final String USAGE =
+            "Usage: CopyCommand <source dir> <target dir> " +
+                    "[--date=ALL_DAYS|TODAY|LAST_7_DAYS|LAST_30_DAYS] " +
+                    "[--types=java,txt,...] [--zip] [--sync] [--workers=n] " +
+                    "[--virtual-threads] [--checksum=CRC32C|SHA-256] [--verify] [--move] " +
+                    "[--archive] [--jmx]";
+
+    // The console progress is printed at most this often.
+    private static final long PROGRESS_INTERVAL_MILLIS = 500L;
+
+    private Path sourceDir;
+    private Path targetDir;
+    private final FileFilters fileFilters = FileFilters.getDefault();
+    private boolean zip;
+    private boolean sync;
+    private int workers = CopyEngine.DEFAULT_WORKERS;
+    private boolean virtualThreads;
+    private ChecksumAlgorithm checksumAlgorithm;
+    private boolean verify;
+    private boolean move;
+    private boolean archive;
+    private boolean jmx = CopyMetrics.isJmxRemoteEnabled();
+
+    private volatile long lastProgressTime;
+    private long copyStartTime;
+
+
+    public static void main(String... args) {
+
+        CopyCommand command = new CopyCommand();
+
+        try {
+            command.parseArguments(args);
+        }
+        catch (IllegalArgumentException ex) {
+
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        try {
+            command.run();
+        }
+        catch (IOException | InterruptedException ex) {
+
+            System.err.println("There was an error during the copy process:");
+            System.err.println(ex);
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String... args) {
+
+        if (args.length < 2) {
+
+            throw new IllegalArgumentException("Source and target directories are required.");
+        }
+
+        sourceDir = Paths.get(args[0]).toAbsolutePath().normalize();
+        targetDir = Paths.get(args[1]).toAbsolutePath().normalize();
+
+        for (String arg : Arrays.copyOfRange(args, 2, args.length)) {
+
+            if (arg.startsWith("--date=")) {
+
+                fileFilters.setDateOption(parseDateOption(arg.substring(7)));
+            }
+            else if (arg.startsWith("--types=")) {
+
+                fileFilters.setFileTypes(Arrays.asList(arg.substring(8).split(",", -1)));
+            }
+            else if (arg.equals("--zip")) {
+
+                zip = true;
+            }
+            else if (arg.equals("--sync")) {
+
+                sync = true;
+            }
+            else if (arg.startsWith("--workers=")) {
+
+                workers = Integer.parseInt(arg.substring(10));
+            }
+            else if (arg.equals("--virtual-threads")) {
+
+                if (! VirtualThreads.isSupported()) {
+
+                    throw new IllegalArgumentException("Virtual threads require Java 21 or later.");
+                }
+
+                virtualThreads = true;
+            }
+            else if (arg.startsWith("--checksum=")) {
+
+                checksumAlgorithm = ChecksumAlgorithm.lookup(arg.substring(11));
+
+                if (checksumAlgorithm == null) {
+
+                    throw new IllegalArgumentException("Unknown checksum: " + arg.substring(11));
+                }
+            }
+            else if (arg.equals("--verify")) {
+
+                verify = true;
+            }
+            else if (arg.equals("--move")) {
+
+                move = true;
+            }
+            else if (arg.equals("--archive")) {
+
+                archive = true;
+            }
+            else if (arg.equals("--jmx")) {
+
+                jmx = true;
+            }
+            else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (! Files.isDirectory(sourceDir)) {
+
+            throw new IllegalArgumentException("Not a directory: " + sourceDir);
+        }
+
+        if (sourceDir.equals(targetDir) || targetDir.startsWith(sourceDir)) {
+
+            throw new IllegalArgumentException("Source and target directories are same, or " +
+                    "the target is within the source.");
+        }
+
+        if (archive && move) {
+
+            throw new IllegalArgumentException("The --archive and --move options cannot be used together.");
+        }
+    }
+
+    /*
+     * The date option is either the enum constant name, for example
+     * LAST_7_DAYS, or its formatted string, for example "Last 7 days".
+     */
+    private static DateOption parseDateOption(String s) {
+
+        DateOption option = DateOption.lookup(s);
+
+        if (option == null) {
+
+            option = DateOption.valueOf(s.toUpperCase());
+        }
+
+        return option;
+    }
+
+    /*
+     * Runs the copy job, with its phase and metrics shown by the
+     * CopyMetrics MBean when it is registered.
+     */
+    private void run()
+            throws IOException, InterruptedException {
+
+        System.out.println("Source directory: " + sourceDir);
+        System.out.println("Target directory: " + targetDir);
+        System.out.println("File filters: " + fileFilters);
+        Files.createDirectories(targetDir);
+
+        CopyEngine copyEngine = new CopyEngine(sourceDir, targetDir);
+        CopyMetrics metrics = jmx ?
+                CopyMetrics.getRegisteredInstance() : CopyMetrics.getInstance();
+        metrics.startJob(copyEngine);
+
+        try {
+            copy(copyEngine, metrics);
+            metrics.setPhase(CopyPhase.COMPLETED);
+        }
+        catch (IOException | InterruptedException | RuntimeException ex) {
+
+            metrics.setPhase(CopyPhase.FAILED);
+            throw ex;
+        }
+    }
+
+    /*
+     * Applies the file filters, copies the filtered files and creates the
+     * ZIP file if the option is set; as in CopyDialog.copyRoutine(). For a
+     * copy, the filters are applied by the engine in the walk of the copy;
+     * for a move or an archive, they are applied first.
+     */
+    private void copy(CopyEngine copyEngine, CopyMetrics metrics)
+            throws IOException, InterruptedException {
+
+        FileFilterApplication filterApplication = new FileFilterApplication();
+        Set<Path> filteredFiles = null;
+        int filesCount = 0;
+        long bytesCount = 0;
+
+        if (archive || move) {
+
+            filterApplication.setVirtualThreads(virtualThreads);
+            filteredFiles = filterApplication.apply(sourceDir, fileFilters);
+            filesCount = filterApplication.getFilesCount();
+            bytesCount = filterApplication.getBytesCount();
+            System.out.println("Filters applied. " +
+                    "Directories [" + filterApplication.getDirsCount() + "], " +
+                    "Files [" + filesCount + "], " +
+                    "Bytes [" + bytesCount + "].");
+        }
+
+        if (archive) {
+
+            archive(filteredFiles, filesCount, bytesCount, metrics);
+            return;
+        }
+
+        if (move) {
+
+            FileMover fileMover = new FileMover(sourceDir, targetDir);
+
+            if (fileMover.isSameFileStore()) {
+
+                metrics.setPhase(CopyPhase.MOVING);
+                fileMover.move(filteredFiles, filterApplication.getCompleteDirs(), () -> false);
+                System.out.println("Move completed. " +
+                        "Directories moved whole [" + fileMover.getMovedDirsCount() + "], " +
+                        "Files moved [" + fileMover.getMovedFilesCount() + "]");
+
+                if (zip && ((fileMover.getMovedFilesCount() + fileMover.getMovedDirsCount()) > 0)) {
+
+                    metrics.setPhase(CopyPhase.ZIPPING);
+                    System.out.println("ZIP file created: " + ZipFileCreator.zip(targetDir));
+                }
+
+                return;
+            }
+
+            System.out.println("Source and target are on different file stores: " +
+                    "the files are copied, then deleted from the source.");
+        }
+
+        copyEngine.setWorkers(workers);
+        copyEngine.setVirtualThreads(virtualThreads);
+        copyEngine.setChecksumAlgorithm(checksumAlgorithm);
+        copyEngine.setSyncMode(sync);
+        // The files are zipped as they are copied
+        copyEngine.setArchiveFile(zip ? ZipFileCreator.getZipFile(targetDir) : null);
+        boolean resume = CopyJournal.exists(sourceDir, targetDir);
+        CopyJournal journal = CopyJournal.open(sourceDir, targetDir, resume);
+        copyEngine.setJournal(journal);
+
+        if (resume) {
+
+            System.out.println("Resuming the earlier copy. Files already copied [" +
+                    journal.getCompletedFilesCount() + "].");
+        }
+
+        copyStartTime = System.currentTimeMillis();
+        copyEngine.setProgressListener(done -> printProgress(done,
+                copyEngine.getFoundWork(), copyEngine.isWalkCompleted()));
+        metrics.setPhase(CopyPhase.COPYING);
+
+        if (filteredFiles != null) {
+
+            copyEngine.copy(filteredFiles, () -> false);
+        }
+        else {
+            copyEngine.copy(p -> true, fileFilters, () -> false);
+        }
+
+        long totalWork = copyEngine.getFoundWork();
+        printProgress(totalWork, totalWork, true);
+        System.out.println();
+
+        if (filteredFiles == null) {
+
+            System.out.println("Filters applied. " +
+                    "Directories [" + copyEngine.getFoundDirsCount() + "], " +
+                    "Files [" + copyEngine.getFoundFilesCount() + "], " +
+                    "Bytes [" + copyEngine.getFoundBytesCount() + "].");
+        }
+
+        System.out.println("Copy completed. " +
+                "Directories copied [" + copyEngine.getCopiedDirsCount() + "], " +
+                "Files copied [" + copyEngine.getCopiedFilesCount() + "], " +
+                "Bytes copied [" + copyEngine.getCopiedBytesCount() + "]");
+        System.out.println("Files copied at the same time [" + copyEngine.getConcurrency() + "]");
+
+        if (sync) {
+
+            System.out.println("Sync: " +
+                    "Files updated [" + copyEngine.getUpdatedFilesCount() + "], " +
+                    "skipped (unchanged) [" + copyEngine.getSkippedFilesCount() + "]");
+        }
+
+        if (checksumAlgorithm != null) {
+
+            System.out.println("Checksums manifest: " + copyEngine.getManifestFile());
+        }
+
+        if (verify) {
+
+            metrics.setPhase(CopyPhase.VERIFYING);
+            verify(copyEngine);
+        }
+
+        if (move) {
+
+            FileMover fileMover = new FileMover(sourceDir, targetDir);
+            fileMover.deleteSources(filteredFiles, filterApplication.getCompleteDirs(), () -> false);
+            System.out.println("Files deleted from the source [" +
+                    fileMover.getDeletedFilesCount() + "]");
+        }
+
+        if (zip) {
+
+            if (copyEngine.getArchivedFilesCount() > 0) {
+
+                System.out.println("ZIP file created: " + copyEngine.getArchiveFile() +
+                        ", files [" + copyEngine.getArchivedFilesCount() + "]");
+            }
+            else {
+                System.out.println("Cannot create ZIP file with files count = 0");
+            }
+        }
+    }
+
+    /*
+     * Writes the filtered files straight into the ZIP file, without a copy;
+     * see ZipFileCreator.
+     */
+    private void archive(Set<Path> filteredFiles, int filesCount, long bytesCount, CopyMetrics metrics)
+            throws IOException {
+
+        if (filesCount == 0) {
+
+            System.out.println("Cannot create ZIP file with files count = 0");
+            return;
+        }
+
+        Path sourceName = sourceDir.getFileName();
+        Path zipFile = targetDir.resolve(((sourceName == null) ? "archive" : sourceName) + ".zip");
+        long totalWork = CopyEngine.getTotalWork(0, filesCount, bytesCount);
+        copyStartTime = System.currentTimeMillis();
+        ZipFileCreator.Archive archiveJob = new ZipFileCreator.Archive();
+        archiveJob.setFilesCount(filesCount);
+        metrics.startJob(archiveJob);
+        metrics.setPhase(CopyPhase.ZIPPING);
+        ZipFileCreator.zip(sourceDir, filteredFiles, zipFile, () -> false,
+                done -> printProgress(done, totalWork), archiveJob);
+        printProgress(totalWork, totalWork);
+        System.out.println();
+        System.out.println("ZIP file created: " + zipFile);
+    }
+
+    /*
+     * Verifies the copied files against the checksums manifest and prints
+     * the mismatches. Mismatches fail the command.
+     */
+    private static void verify(CopyEngine copyEngine)
+            throws IOException, InterruptedException {
+
+        System.out.println("Verifying the copied files...");
+        CopyVerifier verifier = CopyVerifier.of(copyEngine);
+        List<String> mismatches = verifier.verify(() -> false);
+        System.out.println("Verify: Files verified [" + verifier.getVerifiedFilesCount() + "], " +
+                "mismatches [" + mismatches.size() + "]");
+        mismatches.forEach(m -> System.out.println("Mismatch: " + m));
+
+        if (! mismatches.isEmpty()) {
+
+            throw new IOException("Verify found mismatches [" + mismatches.size() + "]");
+        }
+    }
+
+    /*
+     * Prints the percentage done and the time left on the same console
+     * line. The progress is reported by the copy workers concurrently; it
+     * is printed at most once every PROGRESS_INTERVAL_MILLIS, and when done.
+     */
+    private void printProgress(long done, long total) {
+
+        printProgress(done, total, true);
+    }
+
+    /*
+     * As printProgress(done, total); until isTotal is true, the total is
+     * of the files found so far, and the time left is not printed.
+     */
+    private void printProgress(long done, long total, boolean isTotal) {
+
+        long now = System.currentTimeMillis();
+
+        if (((done < total) || (! isTotal)) &&
+                (now - lastProgressTime < PROGRESS_INTERVAL_MILLIS)) {
+
+            return;
+        }
+
+        synchronized (this) {
+
+            lastProgressTime = now;
+            long percent = (total > 0) ? (done * 100 / total) : 100;
+            long remaining = isTotal ?
+                    CopyEngine.getRemainingMillis(done, total, now - copyStartTime) : -1L;
+            System.out.print("\rCopy in progress... " + Math.min(percent, 100) + "%" +
+                    (isTotal ? "" : " of the files found so far") +
+                    ((remaining < 0) ? "" : ", time left " + CopyEngine.formatDuration(remaining)) +
+                    "   ");
+        }
+    }
+}
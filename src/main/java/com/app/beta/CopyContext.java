@@ -0,0 +1,68 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+
+/*
+ * The copy engine's state as seen by a CopyStrategy while a file is copied.
+ */
+public interface CopyContext {
+
+
+    /*
+     * Returns true if the copy is cancelled, or is stopped due to an error
+     * in another worker. A strategy checks this between chunks.
+     */
+    boolean isStopped();
+
+    /*
+     * Size in bytes of the chunks large files are copied in. This can
+     * change during a copy, see CopyEngine.setBytesPerSecond().
+     */
+    int getChunkSize();
+
+    /*
+     * Called by a strategy after each chunk with the count of bytes copied,
+     * and of those, the count of bytes actually written to the target.
+     */
+    void bytesCopied(long count, long written);
+
+    /*
+     * Called by a strategy which writes all the bytes it copies.
+     */
+    default void bytesCopied(long count) {
+
+        bytesCopied(count, count);
+    }
+
+    /*
+     * Returns true if the copy is recorded in a journal, so that a
+     * partially copied target can be kept when the copy is stopped;
+     * see CopyJournal.
+     */
+    boolean isResumable();
+
+    /*
+     * Returns the position up to which the source file was copied by a
+     * previous copy, or 0 to copy the file from the start. The bytes up
+     * to the position are counted as work done, not as bytes copied.
+     */
+    long getResumePosition(Path source, BasicFileAttributes attrs)
+            throws IOException;
+
+    /*
+     * Called by a strategy which computes checksums, with the checksum of
+     * a file copied completely; see ChecksumCopyStrategy.
+     */
+    void fileDigested(Path source, BasicFileAttributes attrs, String checksum)
+            throws IOException;
+
+    /*
+     * Called by a resumable strategy after each chunk with the position
+     * reached in the file.
+     */
+    void positionReached(Path source, BasicFileAttributes attrs, long position)
+            throws IOException;
+}
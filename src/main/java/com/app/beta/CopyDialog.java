@@ -19,10 +19,10 @@ import javafx.stage.Stage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 
 /*
@@ -39,12 +39,28 @@ public class CopyDialog {
 
     private final TextArea statusArea;
     private Button selectTargetBtn;
+    private Button addTargetBtn;
     private Button filtersBtn;
     private Button copyBtn;
     private Button cancelBtn;
+    private Button pauseBtn;
     private Button closeBtn;
     private CheckBox zipCheckBox;
+    private CheckBox archiveCheckBox;
+    private CheckBox syncCheckBox;
+    private CheckBox moveCheckBox;
+    private CheckBox deltaCheckBox;
+    private CheckBox mappedCheckBox;
+    private CheckBox sparseCheckBox;
+    private CheckBox virtualCheckBox;
+    private Spinner<Integer> workersSpinner;
+    private Spinner<Integer> bandwidthSpinner;
+    private Spinner<Integer> filesRateSpinner;
+    private ChoiceBox<String> checksumChoiceBox;
+    private CheckBox verifyCheckBox;
     private ProgressBar progressBar;
+    private Label timeLeftLabel;
+    private Label targetsProgressLabel;
 
     private final FileFilterDialog fileFiltersDialog;
     private FileFilters fileFilters;
@@ -56,19 +72,28 @@ public class CopyDialog {
     // The target or destination directory to which the files are copied to.
     // This is obtained from a directory chooser in this dialog.
     private Path targetDir;
+    /*
+     * The target directories added to the target directory; the files are
+     * copied to all of them at once, see FanOutCopyEngine.
+     */
+    private final List<Path> addedTargetDirs = new ArrayList<>();
 
     // The files copy is performed in a background thread by this Task object.
     // See copyRoutine() method.
     private Task<Void> copyTask;
 
-    // Counters for total files and directories that are actually copied.
-    // These are used to show the status after the copy task is complete.
-    private int copiedFilesCount;
-    private int copiedDirsCount;
+    // Copies the filtered files with a pool of worker threads. Its counters
+    // are used to show the status after the copy task is complete.
+    private CopyEngine copyEngine;
 
 
     private static final String DEFAULT_DIRECTORY =
             System.getProperty("user.dir"); //  or "user.home"
+    private static final String NO_CHECKSUM = "None";
+    private static final int MAX_LOGGED_MISMATCHES = 20;
+
+    private static final String PAUSE_TEXT = "Pause copy";
+    private static final String RESUME_TEXT = "Resume copy";
     private static Logger logger;
 
 
@@ -104,12 +129,78 @@ public class CopyDialog {
         selectTargetBtn = new Button("Target directory...");
         selectTargetBtn.setTooltip(new Tooltip("Select a target directory"));
         selectTargetBtn.setOnAction(e -> chooseTargetDirectory());
+        addTargetBtn = new Button("Add target...");
+        addTargetBtn.setTooltip(new Tooltip(
+                "Add another target directory; the files are read once and copied to all targets"));
+        addTargetBtn.setOnAction(e -> addTargetDirectory());
+        addTargetBtn.setDisable(true);
         filtersBtn = new Button("Filters...");
         filtersBtn.setTooltip(new Tooltip("Apply file filters"));
         filtersBtn.setOnAction(e -> getFilters());
         filtersBtn.setDisable(true);
         zipCheckBox = new CheckBox("Create ZIP file");
         zipCheckBox.setDisable(true);
+        syncCheckBox = new CheckBox("Sync (skip unchanged files)");
+        syncCheckBox.setTooltip(new Tooltip(
+                "Skip files with the same size and modified time in the target"));
+        syncCheckBox.setDisable(true);
+        archiveCheckBox = new CheckBox("Archive only (ZIP, no copy)");
+        archiveCheckBox.setTooltip(new Tooltip(
+                "Write the filtered files straight into a ZIP file in the target directory"));
+        archiveCheckBox.setOnAction(e -> {
+            moveCheckBox.setSelected(false);
+            moveCheckBox.setDisable(archiveCheckBox.isSelected());
+        });
+        archiveCheckBox.setDisable(true);
+        moveCheckBox = new CheckBox("Move (delete the source files)");
+        moveCheckBox.setTooltip(new Tooltip(
+                "Move the files; on the same disk they are renamed, otherwise copied and deleted"));
+        moveCheckBox.setDisable(true);
+        deltaCheckBox = new CheckBox("Delta (rewrite changed blocks)");
+        deltaCheckBox.setTooltip(new Tooltip(
+                "Update existing large files by rewriting only their changed blocks"));
+        deltaCheckBox.setDisable(true);
+        mappedCheckBox = new CheckBox("Memory map large files");
+        mappedCheckBox.setTooltip(new Tooltip(
+                "Copy large files through memory mapped windows, on local disks"));
+        mappedCheckBox.setDisable(true);
+        sparseCheckBox = new CheckBox("Keep files sparse");
+        sparseCheckBox.setTooltip(new Tooltip(
+                "Do not write the blocks of zeros of large files, such as disk images"));
+        sparseCheckBox.setDisable(true);
+        virtualCheckBox = new CheckBox("Virtual threads");
+        virtualCheckBox.setTooltip(new Tooltip(VirtualThreads.isSupported() ?
+                "Scan and copy each directory and file with its own virtual thread" :
+                "Virtual threads require Java 21 or later"));
+        virtualCheckBox.setDisable(true);
+        workersSpinner = new Spinner<>(1, CopyEngine.MAX_WORKERS, CopyEngine.DEFAULT_WORKERS);
+        workersSpinner.setTooltip(new Tooltip("Number of files copied in parallel"));
+        workersSpinner.setPrefWidth(80.0d);
+        workersSpinner.setDisable(true);
+        // The copy rate limits are applied when changed, also while a
+        // copy is running; 0 is no limit.
+        bandwidthSpinner = new Spinner<>(0, 100_000, 0);
+        bandwidthSpinner.setTooltip(new Tooltip("Limit of MB copied per second, 0 for no limit"));
+        bandwidthSpinner.setPrefWidth(100.0d);
+        bandwidthSpinner.setEditable(true);
+        bandwidthSpinner.valueProperty().addListener((ov, oldVal, newVal) -> applyRateLimits());
+        filesRateSpinner = new Spinner<>(0, 1_000_000, 0);
+        filesRateSpinner.setTooltip(new Tooltip("Limit of files copied per second, 0 for no limit"));
+        filesRateSpinner.setPrefWidth(100.0d);
+        filesRateSpinner.setEditable(true);
+        filesRateSpinner.valueProperty().addListener((ov, oldVal, newVal) -> applyRateLimits());
+        checksumChoiceBox = new ChoiceBox<>(FXCollections.observableArrayList(
+                NO_CHECKSUM,
+                ChecksumAlgorithm.CRC32C.toString(),
+                ChecksumAlgorithm.SHA_256.toString()));
+        checksumChoiceBox.setValue(NO_CHECKSUM);
+        checksumChoiceBox.setTooltip(new Tooltip(
+                "Compute the checksums of the files as they are copied, into a manifest"));
+        checksumChoiceBox.setDisable(true);
+        verifyCheckBox = new CheckBox("Verify after copy");
+        verifyCheckBox.setTooltip(new Tooltip(
+                "Read the target files again and check them against the manifest"));
+        verifyCheckBox.setDisable(true);
         copyBtn = new Button("Copy files...");
         copyBtn.setTooltip(new Tooltip("Copy files to target directory"));
         copyBtn.setOnAction(e -> copyRoutine(selectedFiles));
@@ -122,6 +213,10 @@ public class CopyDialog {
             }
         });
         cancelBtn.setDisable(true);
+        pauseBtn = new Button(PAUSE_TEXT);
+        pauseBtn.setTooltip(new Tooltip("Pause the copy, or resume the paused copy"));
+        pauseBtn.setOnAction(e -> pauseOrResume());
+        pauseBtn.setDisable(true);
         closeBtn = new Button("Close");
         closeBtn.setTooltip(new Tooltip("Close the dialog"));
         closeBtn.setOnAction(e -> dialog.close());
@@ -135,23 +230,42 @@ public class CopyDialog {
          */
         if (System.getProperty("os.name").toLowerCase().contains("windows")) {
 
-            btnHb.getChildren().addAll(selectTargetBtn, filtersBtn, zipCheckBox, copyBtn, cancelBtn, closeBtn);
+            btnHb.getChildren().addAll(selectTargetBtn, addTargetBtn, filtersBtn, zipCheckBox, copyBtn, pauseBtn, cancelBtn, closeBtn);
         }
         else {
-            btnHb.getChildren().addAll(selectTargetBtn, filtersBtn, copyBtn, cancelBtn, closeBtn);
+            btnHb.getChildren().addAll(selectTargetBtn, addTargetBtn, filtersBtn, copyBtn, pauseBtn, cancelBtn, closeBtn);
         }
 
         progressBar = new ProgressBar();
         progressBar.setPrefWidth(600.0d);
         progressBar.setTooltip(new Tooltip("Copy files process progress"));
 
-        HBox statusHb = new HBox();
+        timeLeftLabel = new Label();
+        timeLeftLabel.setPrefWidth(150.0d);
+        timeLeftLabel.setTooltip(new Tooltip("Estimated time left of the copy, by the bytes copied"));
+
+        HBox statusHb = new HBox(15);
         statusHb.setAlignment(Pos.CENTER);
-        statusHb.getChildren().addAll(progressBar);
+        statusHb.getChildren().addAll(progressBar, timeLeftLabel);
+
+        targetsProgressLabel = new Label();
+        targetsProgressLabel.setPrefWidth(765.0d);
+        targetsProgressLabel.setTooltip(new Tooltip("Copy progress of each target directory"));
+
+        HBox optionsHb = new HBox(15);
+        optionsHb.setAlignment(Pos.CENTER);
+        optionsHb.getChildren().addAll(archiveCheckBox, moveCheckBox, syncCheckBox, deltaCheckBox, mappedCheckBox, sparseCheckBox,
+                virtualCheckBox, new Label("Copy workers:"), workersSpinner);
+
+        HBox limitsHb = new HBox(15);
+        limitsHb.setAlignment(Pos.CENTER);
+        limitsHb.getChildren().addAll(new Label("Limit MB/s:"), bandwidthSpinner,
+                new Label("Limit files/s:"), filesRateSpinner,
+                new Label("Checksums:"), checksumChoiceBox, verifyCheckBox);
 
         VBox vb = new VBox(20);
         vb.setPadding(new Insets(15, 15, 5, 15));
-        vb.getChildren().addAll(statusArea, statusHb, btnHb);
+        vb.getChildren().addAll(statusArea, statusHb, targetsProgressLabel, optionsHb, limitsHb, btnHb);
 
         dialog.setScene(new Scene(vb));
 
@@ -190,8 +304,9 @@ public class CopyDialog {
         File chosenDir = chooser.showDialog(null);
 
         targetDir = (chosenDir == null) ? null : chosenDir.toPath();
+        addedTargetDirs.clear();
 
-        if (! verifyDirectories()) {
+        if (! verifyDirectory(targetDir)) {
 
             return;
         }
@@ -199,35 +314,108 @@ public class CopyDialog {
         logger.info("Target directory: " + targetDir.toString());
         progressBar.progressProperty().unbind();
         progressBar.setProgress(0);
+        timeLeftLabel.textProperty().unbind();
+        timeLeftLabel.setText("");
+        targetsProgressLabel.setText("");
         fileFilters = null;
+        addTargetBtn.setDisable(false);
         zipCheckBox.setDisable(false);
+        syncCheckBox.setDisable(false);
+        archiveCheckBox.setSelected(false);
+        archiveCheckBox.setDisable(false);
+        moveCheckBox.setDisable(false);
+        deltaCheckBox.setDisable(false);
+        mappedCheckBox.setDisable(false);
+        sparseCheckBox.setDisable(false);
+        virtualCheckBox.setDisable(! VirtualThreads.isSupported());
+        workersSpinner.setDisable(false);
+        checksumChoiceBox.setDisable(false);
+        verifyCheckBox.setDisable(false);
         copyBtn.setDisable(false);
         filtersBtn.setDisable(false);
         filtersBtn.requestFocus();
     }
 
+    /*
+     * Opens the directory chooser for another target directory; the
+     * files are copied to the target directory and to all the added ones
+     * at once. The options which the FanOutCopyEngine does not support
+     * are disabled.
+     */
+    private void addTargetDirectory() {
+
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Select another target directory");
+        chooser.setInitialDirectory(new File(DEFAULT_DIRECTORY));
+        File chosenDir = chooser.showDialog(null);
+        Path dir = (chosenDir == null) ? null : chosenDir.toPath();
+
+        if (! verifyDirectory(dir)) {
+
+            return;
+        }
+
+        if (dir.equals(targetDir) || addedTargetDirs.contains(dir) ||
+                dir.startsWith(targetDir) || targetDir.startsWith(dir)) {
+
+            showAlertDialog("The directory is a target already, or " +
+                    "is within or contains a target.");
+            return;
+        }
+
+        addedTargetDirs.add(dir);
+        logger.info("Target directory added: " + dir +
+                ". Targets [" + (addedTargetDirs.size() + 1) + "]");
+
+        if (addedTargetDirs.size() == 1) {
+
+            logger.info("With more than one target, the files are copied whole: " +
+                    "the sync, delta, memory map, sparse, virtual threads, " +
+                    "checksums, rate limits, archive only, move and pause options are not available.");
+        }
+
+        syncCheckBox.setSelected(false);
+        syncCheckBox.setDisable(true);
+        moveCheckBox.setSelected(false);
+        moveCheckBox.setDisable(true);
+        archiveCheckBox.setSelected(false);
+        archiveCheckBox.setDisable(true);
+        deltaCheckBox.setSelected(false);
+        deltaCheckBox.setDisable(true);
+        mappedCheckBox.setSelected(false);
+        mappedCheckBox.setDisable(true);
+        sparseCheckBox.setSelected(false);
+        sparseCheckBox.setDisable(true);
+        virtualCheckBox.setSelected(false);
+        virtualCheckBox.setDisable(true);
+        checksumChoiceBox.setValue(NO_CHECKSUM);
+        checksumChoiceBox.setDisable(true);
+        verifyCheckBox.setSelected(false);
+        verifyCheckBox.setDisable(true);
+    }
+
     /*
      * Checks if the target directory path is not the same as
      * that of the source path, or the target is not within the
      * source directory structure; shows an alert message.
      */
-    private boolean verifyDirectories() {
+    private boolean verifyDirectory(Path dir) {
 
-        if (targetDir == null) {
+        if (dir == null) {
 
             showAlertDialog("No directory selected!");
             return false;
         }
 
-        if ((sourceDir.equals(targetDir)) ||
-                (targetDir.startsWith(sourceDir))) {
+        if ((sourceDir.equals(dir)) ||
+                (dir.startsWith(sourceDir))) {
 
             showAlertDialog("Source and target directories are same, or " +
                     "the target is within the source.");
             return false;
         }
 
-        if (Objects.requireNonNull(targetDir.toFile().list()).length > 0) {
+        if (Objects.requireNonNull(dir.toFile().list()).length > 0) {
 
             logger.warning("The target directory is not empty.");
         }
@@ -247,6 +435,66 @@ public class CopyDialog {
         alert.show();
     }
 
+    /*
+     * In case the target directory has the journal of an earlier copy
+     * from the source directory which did not complete, asks if that
+     * copy is to be resumed. See CopyJournal.
+     */
+    private boolean confirmResume() {
+
+        if (! CopyJournal.exists(sourceDir, targetDir)) {
+
+            return false;
+        }
+
+        Alert alert = new Alert(AlertType.CONFIRMATION,
+                "An earlier copy to this target directory did not complete.\n" +
+                        "Resume it? Files already copied are not copied again.",
+                ButtonType.YES, ButtonType.NO);
+        alert.setTitle("Files Copy");
+        return alert.showAndWait()
+                .filter(b -> b == ButtonType.YES)
+                .isPresent();
+    }
+
+    /*
+     * Verifies the copied files against the checksums manifest, which is
+     * created by this copy, or an earlier one. Runs in the copy Task; the
+     * mismatches are logged, up to MAX_LOGGED_MISMATCHES of them, and fail
+     * the Task.
+     */
+    private void verifyRoutine(BooleanSupplier isCancelled)
+            throws IOException, InterruptedException {
+
+        CopyVerifier verifier = CopyVerifier.of(copyEngine);
+
+        if (! Files.exists(verifier.getManifestFile())) {
+
+            logger.info("Cannot verify, there is no checksums manifest: " +
+                    verifier.getManifestFile());
+            return;
+        }
+
+        logger.info("Verifying the copied files...");
+        List<String> mismatches = verifier.verify(isCancelled);
+
+        if (isCancelled.getAsBoolean()) {
+
+            return;
+        }
+
+        logger.info("Verify: Files verified [" + verifier.getVerifiedFilesCount() + "], " +
+                "mismatches [" + mismatches.size() + "]");
+        mismatches.stream()
+                .limit(MAX_LOGGED_MISMATCHES)
+                .forEach(m -> logger.info("Mismatch: " + m));
+
+        if (! mismatches.isEmpty()) {
+
+            throw new IOException("Verify found mismatches [" + mismatches.size() + "]");
+        }
+    }
+
     /*
      * Displays the file filters dialog and captures user input. Gets
      * the selected file filter options as an instance of FileFilters.
@@ -276,135 +524,220 @@ public class CopyDialog {
      * Routine for the Copy files button action.
      * 1. Applies the file filters to the selected files.
      * 2. Copies the filtered files to target directory.
-     * 3. Creates a ZIP file if the option is selected.
+     *    These two are done in one walk of the source; see CopyEngine.
+     * 3. Creates a ZIP file if the option is selected; the files are
+     *    added to it as they are copied.
+     * In the move mode, the files are renamed into the target directory
+     * instead, if it is on the same file store as the source; otherwise
+     * the copied files are deleted from the source. See FileMover.
+     * The copy is recorded in a journal in the target directory, so that
+     * it can be resumed if it does not complete.
      * These tasks are performed as a JavaFX concurrent Task. At end,
      * a status (Succeeded, Failed/exception or Cancelled) is displayed
      * in the status message area.
      */
     private void copyRoutine(Set<Path> inputSelectedFiles) {
 
-        copiedFilesCount = 0;
-        copiedDirsCount = 0;
+        if (! addedTargetDirs.isEmpty()) {
 
-        copyTask = new Task<>() {
+            fanOutCopyRoutine(inputSelectedFiles);
+            return;
+        }
+
+        if (archiveCheckBox.isSelected()) {
+
+            archiveRoutine(inputSelectedFiles);
+            return;
+        }
 
-            int currentCounter;
+        copyEngine = new CopyEngine(sourceDir, targetDir);
+        copyEngine.setWorkers(workersSpinner.getValue());
+        copyEngine.setSyncMode(syncCheckBox.isSelected());
+        copyEngine.setDeltaMode(deltaCheckBox.isSelected());
+        copyEngine.setMappedMode(mappedCheckBox.isSelected());
+        copyEngine.setSparseMode(sparseCheckBox.isSelected());
+        copyEngine.setVirtualThreads(virtualCheckBox.isSelected());
+        copyEngine.setChecksumAlgorithm(ChecksumAlgorithm.lookup(checksumChoiceBox.getValue()));
+        CopyMetrics metrics = CopyMetrics.getRegisteredInstance();
+        FileMover fileMover = moveCheckBox.isSelected() ?
+                new FileMover(sourceDir, targetDir) : null;
+        AtomicBoolean renamed = new AtomicBoolean();
+        applyRateLimits();
+        boolean resume = confirmResume();
+
+        copyTask = new ProgressTask() {
 
             @Override
             protected Void call()
                     throws Exception {
 
                 logger.info("Copying files.");
+                metrics.startJob(copyEngine);
                 Platform.runLater(() -> {
                     copyBtn.setDisable(true);
                     closeBtn.setDisable(true);
                     cancelBtn.setDisable(false);
+                    pauseBtn.setDisable(false);
                     filtersBtn.setDisable(true);
                     zipCheckBox.setDisable(true);
+                    syncCheckBox.setDisable(true);
+                    moveCheckBox.setDisable(true);
+                    archiveCheckBox.setDisable(true);
+                    deltaCheckBox.setDisable(true);
+                    mappedCheckBox.setDisable(true);
+                    sparseCheckBox.setDisable(true);
+                    virtualCheckBox.setDisable(true);
+                    workersSpinner.setDisable(true);
+                    checksumChoiceBox.setDisable(true);
+                    verifyCheckBox.setDisable(true);
                     selectTargetBtn.setDisable(true);
+                    addTargetBtn.setDisable(true);
                 });
 
-                Set<Path> filteredFiles = applyFileFilters(inputSelectedFiles);
-                Map<Boolean, List<Path>> countsMap = filteredFiles.stream()
-                        .collect(Collectors.partitioningBy(Files::isDirectory));
-                int dirsCount = countsMap.get(true).size() - 1; // minus root dir
-                int filesCount = countsMap.get(false).size();
-                logger.info("Filters applied. " +
-                        "Directories [" + (Math.max(dirsCount, 0)) + "], " +
-                        "Files [" + filesCount + "].");
-
-                Thread.sleep(100); // pause for n milliseconds
-                logger.info("Copy in progress...");
-
                 /*
-                 * Walks the source file tree and copies the filtered source
-                 * files to the target directory. The directories and files are
-                 * copied. In case of any existing directories or files in the
-                 * target, they are replaced.
+                 * The files to move are filtered first, as the move needs
+                 * the directories whose files all pass the filters. For a
+                 * copy, the engine applies the filters as it walks the
+                 * source; so the copy starts at once.
                  */
-                Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+                FileFilterApplication filterApplication = new FileFilterApplication();
+                Set<Path> filteredFiles = null;
+                int dirsCount = 0;
+                int filesCount = 0;
+                long bytesCount = 0;
+
+                if (fileMover != null) {
+
+                    filterApplication.setVirtualThreads(copyEngine.getVirtualThreads());
+                    filteredFiles = applyFileFilters(filterApplication, inputSelectedFiles);
+                    dirsCount = filterApplication.getDirsCount();
+                    filesCount = filterApplication.getFilesCount();
+                    bytesCount = filterApplication.getBytesCount();
+
+                    logger.info("Filters applied. " +
+                            "Directories [" + dirsCount + "], " +
+                            "Files [" + filesCount + "], " +
+                            "Bytes [" + bytesCount + "].");
+                }
+
+                if ((fileMover != null) && fileMover.isSameFileStore()) {
+
+                    renamed.set(true);
+                    Platform.runLater(() -> pauseBtn.setDisable(true));
+                    logger.info("Source and target are on the same file store: " +
+                            "moving the files by renaming them...");
+                    metrics.setPhase(CopyPhase.MOVING);
+                    fileMover.move(filteredFiles,
+                            filterApplication.getCompleteDirs(), this::isCancelled);
+                    updateProgress(1, 1);
+                }
+                else {
+                    CopyJournal journal = CopyJournal.open(sourceDir, targetDir, resume);
+                    copyEngine.setJournal(journal);
+
+                    if (resume) {
+
+                        logger.info("Resuming the earlier copy. Files already copied [" +
+                                journal.getCompletedFilesCount() + "].");
+                    }
+
+                    Thread.sleep(100); // pause for n milliseconds
+                    logger.info("Copy in progress, workers [" +
+                            copyEngine.getWorkers() + "]...");
 
                     /*
-                     * Copy the directories.
+                     * Copies the filtered source files to the target directory;
+                     * see CopyEngine. In case of any existing directories or
+                     * files in the target, they are replaced. The engine checks
+                     * the Task's isCancelled() method, which returns true when
+                     * its cancel() is executed; in this app when the Cancel copy
+                     * button is clicked. Then the files copy is terminated.
+                     * The Progress bar is updated using the Task's
+                     * updateProgress(workDone, max) method, and the time left
+                     * using its updateMessage(); see ProgressTask. When the
+                     * files are filtered by the engine, the total is the work
+                     * found so far, and the time left is estimated once it is
+                     * known.
                      */
-                    @Override
-                    public FileVisitResult preVisitDirectory(Path dir,
-                                                             BasicFileAttributes attrs)
-                            throws IOException {
-
-                        if (isCancelled()) {
-
-                            // Task's isCancelled() method returns true
-                            // when its cancel() is executed; in this app
-                            // when the Cancel copy button is clicked.
-                            // Here, the files copy is terminated.
-                            return FileVisitResult.TERMINATE;
-                        }
+                    startProgress();
+                    metrics.setPhase(CopyPhase.COPYING);
 
-                        if (! filteredFiles.contains(dir)) {
+                    // The files are zipped as they are copied
+                    copyEngine.setArchiveFile(zipCheckBox.isSelected() ?
+                            ZipFileCreator.getZipFile(targetDir) : null);
 
-                            return FileVisitResult.SKIP_SUBTREE;
-                        }
+                    if (filteredFiles != null) {
+
+                        long totalWork =
+                                CopyEngine.getTotalWork(dirsCount, filesCount, bytesCount);
+                        copyEngine.setProgressListener(done -> showProgress(done, totalWork));
+                        copyEngine.copy(filteredFiles, this::isCancelled);
+                    }
+                    else {
+                        copyEngine.setProgressListener(done -> showFoundProgress(done));
+                        copyEngine.copy(inputSelectedFiles::contains, getFileFilters(),
+                                this::isCancelled);
+                    }
 
-                        Path target = targetDir.resolve(sourceDir.relativize(dir));
+                    if (! isCancelled()) {
 
-                        try {
-                            Files.copy(dir, target);
-                            copiedDirsCount++;
-                            // Updates the Progress bar using the Task's
-                            // updateProgress(workDone, max) method.
-                            updateProgress(++currentCounter, dirsCount+filesCount);
-                        }
-                        catch (FileAlreadyExistsException e) {
+                        showCompleted(copyEngine.getFoundWork());
+                    }
 
-                            if (! Files.isDirectory(target)) {
+                    if (filteredFiles == null) {
 
-                                throw e;
-                            }
-                        }
+                        logger.info("Filters applied. " +
+                                "Directories [" + copyEngine.getFoundDirsCount() + "], " +
+                                "Files [" + copyEngine.getFoundFilesCount() + "], " +
+                                "Bytes [" + copyEngine.getFoundBytesCount() + "].");
+                    }
 
-                        return FileVisitResult.CONTINUE;
+                    if (copyEngine.getChecksumAlgorithm() != null) {
+
+                        logger.info("Checksums manifest: " + copyEngine.getManifestFile());
                     }
 
                     /*
-                     * Copy the files.
+                     * In the move mode the sources are deleted only after the
+                     * verify, if it is selected, finds no mismatches; a
+                     * mismatch fails the Task and the sources are kept.
                      */
-                    @Override
-                    public FileVisitResult visitFile(Path file,
-                                                     BasicFileAttributes attrs)
-                            throws IOException {
+                    if (verifyCheckBox.isSelected()) {
 
-                        if (isCancelled()) {
+                        if ((fileMover != null) && (! Files.exists(copyEngine.getManifestFile()))) {
 
-                            // Task's isCancelled() method
-                            // terminates the files copy.
-                            return FileVisitResult.TERMINATE;
+                            throw new IOException("Cannot verify, there is no checksums " +
+                                    "manifest; the files are not deleted from the source.");
                         }
 
-                        if (filteredFiles.contains(file)) {
+                        metrics.setPhase(CopyPhase.VERIFYING);
+                        verifyRoutine(this::isCancelled);
+                    }
 
-                            Files.copy(file,
-                                    targetDir.resolve(sourceDir.relativize(file)),
-                                    StandardCopyOption.REPLACE_EXISTING);
-                            copiedFilesCount++;
-                            // Updates the Progress bar using the Task's
-                            // updateProgress(workDone, max) method.
-                            updateProgress(++currentCounter, dirsCount+filesCount);
-                        }
+                    if ((fileMover != null) && (! isCancelled())) {
 
-                        return FileVisitResult.CONTINUE;
+                        logger.info("Deleting the copied files from the source...");
+                        fileMover.deleteSources(filteredFiles,
+                                filterApplication.getCompleteDirs(), this::isCancelled);
                     }
-                });
+                }
 
-                if (zipCheckBox.isSelected()) {
+                if (zipCheckBox.isSelected() && (! isCancelled())) {
 
-                    if (copiedFilesCount > 0) {
+                    if (renamed.get() &&
+                            ((fileMover.getMovedFilesCount() + fileMover.getMovedDirsCount()) > 0)) {
 
+                        metrics.setPhase(CopyPhase.ZIPPING);
                         logger.info("Creating ZIP file, wait... ");
                         Thread.sleep(100);
                         String zipFile = ZipFileCreator.zip(targetDir);
                         logger.info("ZIP file created: " + zipFile);
                     }
+                    else if ((! renamed.get()) && (copyEngine.getArchivedFilesCount() > 0)) {
+
+                        logger.info("ZIP file created: " + copyEngine.getArchiveFile() +
+                                ", files [" + copyEngine.getArchivedFilesCount() + "]");
+                    }
                     else {
                         logger.info("Cannot create ZIP file with files count = 0");
                     }
@@ -412,10 +745,28 @@ public class CopyDialog {
 
                 return null;
             }
+
+            /*
+             * Shows the progress against the work found so far by the
+             * engine's walk. Until the walk is completed, the files found
+             * are shown instead of the time left.
+             */
+            private void showFoundProgress(long done) {
+
+                if (copyEngine.isWalkCompleted()) {
+
+                    showProgress(done, copyEngine.getFoundWork());
+                }
+                else {
+                    showProgress(done, copyEngine.getFoundWork(),
+                            "Files found [" + copyEngine.getFoundFilesCount() + "]...");
+                }
+            }
         };
         // end copyTask class
 
         progressBar.progressProperty().bind(copyTask.progressProperty());
+        timeLeftLabel.textProperty().bind(copyTask.messageProperty());
 
         new Thread(copyTask).start();    // Run the copy task
 
@@ -427,24 +778,373 @@ public class CopyDialog {
             String message = (t != null) ? t.toString() : "Unknown Exception!";
             logger.info("There was an error during the copy process:");
             logger.info(message);
+            metrics.setPhase(CopyPhase.FAILED);
             doTaskEventCloseRoutine(copyTask);
             //t.printStackTrace();
         });
 
         copyTask.setOnCancelled(e -> {
             logger.info("Copy is cancelled by user.");
+            metrics.setPhase(CopyPhase.CANCELLED);
             doTaskEventCloseRoutine(copyTask);
         });
 
         copyTask.setOnSucceeded(e -> {
+            metrics.setPhase(CopyPhase.COMPLETED);
+
+            if (renamed.get()) {
+
+                logger.info("Move completed. " +
+                        "Directories moved whole [" + fileMover.getMovedDirsCount() + "], " +
+                        "Files moved [" + fileMover.getMovedFilesCount() + "]");
+                logger.info(String.format("Move time [%.3f s]",
+                        fileMover.getElapsedMillis() / 1000.0d));
+                doTaskEventCloseRoutine(copyTask);
+                return;
+            }
+
+            int copiedDirsCount = copyEngine.getCopiedDirsCount();
             logger.info("Copy completed. " +
                     "Directories copied [" +
                     ((copiedDirsCount < 1) ? 0 : copiedDirsCount) + "], " +
-                    "Files copied [" + copiedFilesCount + "]");
+                    "Files copied [" + copyEngine.getCopiedFilesCount() + "], " +
+                    "Bytes copied [" + copyEngine.getCopiedBytesCount() + "]");
+
+            if (copyEngine.isCrossDevice()) {
+
+                logger.info("Source and target are on different devices: " +
+                        "large files copied with overlapped reads and writes.");
+            }
+
+            logger.info("Files copied at the same time [" + copyEngine.getConcurrency() + "]");
+
+            double seconds = Math.max(copyEngine.getElapsedMillis(), 1L) / 1000.0d;
+            logger.info(String.format("Copy time [%.1f s], Files/s [%.0f], MB/s [%.1f]",
+                    seconds,
+                    copyEngine.getCopiedFilesCount() / seconds,
+                    copyEngine.getCopiedBytesCount() / seconds / (1024 * 1024)));
+
+            if (copyEngine.getSyncMode()) {
+
+                int updated = copyEngine.getUpdatedFilesCount();
+                logger.info("Sync: " +
+                        "Files new [" + (copyEngine.getCopiedFilesCount() - updated) + "], " +
+                        "updated [" + updated + "], " +
+                        "skipped (unchanged) [" + copyEngine.getSkippedFilesCount() + "]");
+            }
+
+            if (copyEngine.getResumedFilesCount() > 0) {
+
+                logger.info("Resume: Files already copied, not copied again [" +
+                        copyEngine.getResumedFilesCount() + "]");
+            }
+
+            if (copyEngine.getDeltaMode() || copyEngine.getSparseMode()) {
+
+                logger.info("Bytes written [" + copyEngine.getWrittenBytesCount() + "] " +
+                        "of bytes copied (logical) [" + copyEngine.getCopiedBytesCount() + "]");
+            }
+
+            if (fileMover != null) {
+
+                logger.info("Move: Source and target are on different file stores; " +
+                        "files deleted from the source after the copy [" +
+                        fileMover.getDeletedFilesCount() + "]");
+            }
+            doTaskEventCloseRoutine(copyTask);
+        });
+    }
+
+    /*
+     * Routine for the Copy files button action with more than one target
+     * directory: as copyRoutine(), with the FanOutCopyEngine copying the
+     * filtered files to all the targets at once. The progress bar shows
+     * the source files read, and the label below it the progress of each
+     * target. A target which fails is logged and dropped; the copy to the
+     * other targets continues, and a ZIP file is created for each of them.
+     */
+    private void fanOutCopyRoutine(Set<Path> inputSelectedFiles) {
+
+        List<Path> targetDirs = new ArrayList<>();
+        targetDirs.add(targetDir);
+        targetDirs.addAll(addedTargetDirs);
+        FanOutCopyEngine fanOutEngine = new FanOutCopyEngine(sourceDir, targetDirs);
+        fanOutEngine.setWorkers(workersSpinner.getValue());
+        CopyMetrics metrics = CopyMetrics.getRegisteredInstance();
+
+        copyTask = new ProgressTask() {
+
+            @Override
+            protected Void call()
+                    throws Exception {
+
+                logger.info("Copying files to [" + targetDirs.size() + "] target directories.");
+                metrics.startJob(fanOutEngine);
+                Platform.runLater(() -> {
+                    copyBtn.setDisable(true);
+                    closeBtn.setDisable(true);
+                    cancelBtn.setDisable(false);
+                    filtersBtn.setDisable(true);
+                    zipCheckBox.setDisable(true);
+                    workersSpinner.setDisable(true);
+                    selectTargetBtn.setDisable(true);
+                    addTargetBtn.setDisable(true);
+                });
+
+                FileFilterApplication filterApplication = new FileFilterApplication();
+                Set<Path> filteredFiles =
+                        applyFileFilters(filterApplication, inputSelectedFiles);
+                int dirsCount = filterApplication.getDirsCount();
+                int filesCount = filterApplication.getFilesCount();
+                long bytesCount = filterApplication.getBytesCount();
+
+                logger.info("Filters applied. " +
+                        "Directories [" + dirsCount + "], " +
+                        "Files [" + filesCount + "], " +
+                        "Bytes [" + bytesCount + "].");
+
+                Thread.sleep(100); // pause for n milliseconds
+                logger.info("Copy in progress, workers [" +
+                        fanOutEngine.getWorkers() + "]...");
+
+                long totalWork =
+                        FanOutCopyEngine.getTotalWork(dirsCount, filesCount, bytesCount);
+                startProgress();
+                fanOutEngine.setProgressListener(done -> {
+
+                    if (showProgress(done, totalWork)) {
+
+                        showTargetsProgress(totalWork);
+                    }
+                });
+                metrics.setPhase(CopyPhase.COPYING);
+                fanOutEngine.copy(filteredFiles, this::isCancelled);
+
+                if (! isCancelled()) {
+
+                    showCompleted(totalWork);
+                    showTargetsProgress(totalWork);
+                }
+
+                if (zipCheckBox.isSelected()) {
+
+                    metrics.setPhase(CopyPhase.ZIPPING);
+
+                    for (FanOutCopyEngine.Target t : fanOutEngine.getTargets()) {
+
+                        if ((t.getFailure() == null) && (t.getCopiedFilesCount() > 0)) {
+
+                            logger.info("Creating ZIP file, wait... ");
+                            String zipFile = ZipFileCreator.zip(t.getDir());
+                            logger.info("ZIP file created: " + zipFile);
+                        }
+                    }
+                }
+
+                return null;
+            }
+
+            private void showTargetsProgress(long totalWork) {
+
+                StringBuilder sb = new StringBuilder();
+
+                for (FanOutCopyEngine.Target t : fanOutEngine.getTargets()) {
+
+                    sb.append(t.getDir().getFileName()).append(": ");
+                    sb.append((t.getFailure() != null) ? "failed" :
+                            (t.getWorkDone() * 100 / Math.max(totalWork, 1L)) + "%");
+                    sb.append("    ");
+                }
+
+                String text = sb.toString().trim();
+                Platform.runLater(() -> targetsProgressLabel.setText(text));
+            }
+        };
+        // end copyTask class
+
+        progressBar.progressProperty().bind(copyTask.progressProperty());
+        timeLeftLabel.textProperty().bind(copyTask.messageProperty());
+
+        new Thread(copyTask).start();    // Run the copy task
+
+        copyTask.setOnFailed(e -> {
+            Throwable t = copyTask.getException();
+            String message = (t != null) ? t.toString() : "Unknown Exception!";
+            logger.info("There was an error during the copy process:");
+            logger.info(message);
+            logTargetResults(fanOutEngine);
+            metrics.setPhase(CopyPhase.FAILED);
+            doTaskEventCloseRoutine(copyTask);
+        });
+
+        copyTask.setOnCancelled(e -> {
+            logger.info("Copy is cancelled by user.");
+            metrics.setPhase(CopyPhase.CANCELLED);
+            doTaskEventCloseRoutine(copyTask);
+        });
+
+        copyTask.setOnSucceeded(e -> {
+            metrics.setPhase(CopyPhase.COMPLETED);
+            logger.info("Copy completed. Bytes read from the source [" +
+                    fanOutEngine.getReadBytesCount() + "]");
+            logTargetResults(fanOutEngine);
+            logger.info("Files copied at the same time [" + fanOutEngine.getConcurrency() + "]");
+
+            double seconds = Math.max(fanOutEngine.getElapsedMillis(), 1L) / 1000.0d;
+            logger.info(String.format("Copy time [%.1f s], MB/s read [%.1f]",
+                    seconds,
+                    fanOutEngine.getReadBytesCount() / seconds / (1024 * 1024)));
             doTaskEventCloseRoutine(copyTask);
         });
     }
 
+    /*
+     * Routine for the Copy files button action in the archive only mode:
+     * the file filters are applied to the selected files, and the filtered
+     * files are written straight into a ZIP file in the target directory,
+     * named after the source directory; see ZipFileCreator. No files are
+     * copied to the target directory. The progress is shown and the task
+     * can be cancelled as with the copy; a cancelled ZIP file is deleted.
+     */
+    private void archiveRoutine(Set<Path> inputSelectedFiles) {
+
+        Path sourceName = sourceDir.getFileName();
+        Path zipFile = targetDir.resolve(((sourceName == null) ? "archive" : sourceName) + ".zip");
+        CopyMetrics metrics = CopyMetrics.getRegisteredInstance();
+        ZipFileCreator.Archive archive = new ZipFileCreator.Archive();
+        long[] elapsedMillis = { 0L };
+
+        copyTask = new ProgressTask() {
+
+            @Override
+            protected Void call()
+                    throws Exception {
+
+                logger.info("Archiving files, no copy.");
+                metrics.startJob(archive);
+                Platform.runLater(() -> {
+                    copyBtn.setDisable(true);
+                    closeBtn.setDisable(true);
+                    cancelBtn.setDisable(false);
+                    filtersBtn.setDisable(true);
+                    zipCheckBox.setDisable(true);
+                    archiveCheckBox.setDisable(true);
+                    syncCheckBox.setDisable(true);
+                    moveCheckBox.setDisable(true);
+                    deltaCheckBox.setDisable(true);
+                    mappedCheckBox.setDisable(true);
+                    sparseCheckBox.setDisable(true);
+                    virtualCheckBox.setDisable(true);
+                    workersSpinner.setDisable(true);
+                    checksumChoiceBox.setDisable(true);
+                    verifyCheckBox.setDisable(true);
+                    selectTargetBtn.setDisable(true);
+                    addTargetBtn.setDisable(true);
+                });
+
+                FileFilterApplication filterApplication = new FileFilterApplication();
+                filterApplication.setVirtualThreads(virtualCheckBox.isSelected());
+                Set<Path> filteredFiles =
+                        applyFileFilters(filterApplication, inputSelectedFiles);
+                int filesCount = filterApplication.getFilesCount();
+                long bytesCount = filterApplication.getBytesCount();
+                archive.setFilesCount(filesCount);
+
+                logger.info("Filters applied. " +
+                        "Directories [" + filterApplication.getDirsCount() + "], " +
+                        "Files [" + filesCount + "], " +
+                        "Bytes [" + bytesCount + "].");
+
+                if (filesCount == 0) {
+
+                    logger.info("Cannot create ZIP file with files count = 0");
+                    return null;
+                }
+
+                logger.info("Creating ZIP file, wait... ");
+                long totalWork = CopyEngine.getTotalWork(0, filesCount, bytesCount);
+                long startTime = System.currentTimeMillis();
+                startProgress();
+                metrics.setPhase(CopyPhase.ZIPPING);
+                ZipFileCreator.zip(sourceDir, filteredFiles, zipFile, this::isCancelled,
+                        done -> showProgress(done, totalWork), archive);
+                elapsedMillis[0] = System.currentTimeMillis() - startTime;
+
+                if (! isCancelled()) {
+
+                    showCompleted(totalWork);
+                }
+
+                return null;
+            }
+        };
+        // end copyTask class
+
+        progressBar.progressProperty().bind(copyTask.progressProperty());
+        timeLeftLabel.textProperty().bind(copyTask.messageProperty());
+
+        new Thread(copyTask).start();    // Run the archive task
+
+        copyTask.setOnFailed(e -> {
+            Throwable t = copyTask.getException();
+            String message = (t != null) ? t.toString() : "Unknown Exception!";
+            logger.info("There was an error during the archive process:");
+            logger.info(message);
+            metrics.setPhase(CopyPhase.FAILED);
+            doTaskEventCloseRoutine(copyTask);
+        });
+
+        copyTask.setOnCancelled(e -> {
+            logger.info("Archive is cancelled by user.");
+            metrics.setPhase(CopyPhase.CANCELLED);
+            doTaskEventCloseRoutine(copyTask);
+        });
+
+        copyTask.setOnSucceeded(e -> {
+            metrics.setPhase(CopyPhase.COMPLETED);
+
+            if (Files.exists(zipFile)) {
+
+                logger.info("ZIP file created: " + zipFile);
+                logger.info(String.format("Archive time [%.1f s]",
+                        Math.max(elapsedMillis[0], 1L) / 1000.0d));
+            }
+            doTaskEventCloseRoutine(copyTask);
+        });
+    }
+
+    /*
+     * Logs the counts of each target of the fan-out copy, or its error.
+     */
+    private void logTargetResults(FanOutCopyEngine fanOutEngine) {
+
+        for (FanOutCopyEngine.Target t : fanOutEngine.getTargets()) {
+
+            if (t.getFailure() != null) {
+
+                logger.info("Target " + t.getDir() + " failed: " + t.getFailure());
+            }
+            else {
+                logger.info("Target " + t.getDir() + ": " +
+                        "Directories copied [" + t.getCopiedDirsCount() + "], " +
+                        "Files copied [" + t.getCopiedFilesCount() + "], " +
+                        "Bytes copied [" + t.getWrittenBytesCount() + "]");
+            }
+        }
+    }
+
+    /*
+     * Sets the copy rate limits from the spinners to the copy engine.
+     */
+    private void applyRateLimits() {
+
+        if (copyEngine != null) {
+
+            copyEngine.setBytesPerSecond(bandwidthSpinner.getValue() * 1024L * 1024L);
+            copyEngine.setFilesPerSecond(filesRateSpinner.getValue());
+        }
+    }
+
     private void doTaskEventCloseRoutine(Task<Void> copyTask) {
 
         logger.info("Status: " + copyTask.getState() + "\n");
@@ -453,25 +1153,55 @@ public class CopyDialog {
             selectTargetBtn.setDisable(false);
             closeBtn.setDisable(false);
             cancelBtn.setDisable(true);
+            pauseBtn.setDisable(true);
+            pauseBtn.setText(PAUSE_TEXT);
         });
     }
 
     /*
-     * Sets the file filters to its default value in case the filter's dialog
-     * is not opened at all, otherwise the already set value is used. Apply
-     * the file filters; the filtered files are returned as a Set collection.
+     * Pauses the running copy, or resumes the paused copy; see
+     * CopyEngine.pause(). A paused copy can also be cancelled.
      */
-    private Set<Path> applyFileFilters(Set<Path> selectedFiles)
+    private void pauseOrResume() {
+
+        if (copyEngine.isPaused()) {
+
+            copyEngine.resume();
+            pauseBtn.setText(PAUSE_TEXT);
+            logger.info("Copy resumed.");
+        }
+        else {
+            copyEngine.pause();
+            pauseBtn.setText(RESUME_TEXT);
+            logger.info("Copy paused; the files being copied stop after their current chunk.");
+        }
+    }
+
+    /*
+     * Applies the file filters; the filtered files are returned as a Set collection.
+     * The counts of the filtered files are got from the filterApplication.
+     */
+    private Set<Path> applyFileFilters(FileFilterApplication filterApplication,
+                                       Set<Path> selectedFiles)
             throws IOException {
 
+        return filterApplication.apply(sourceDir,
+                selectedFiles,
+                getFileFilters());
+    }
+
+    /*
+     * Returns the file filters, set to the default value in case the
+     * filter's dialog is not opened at all.
+     */
+    private FileFilters getFileFilters() {
+
         if (fileFilters == null) {
 
             fileFilters = FileFilters.getDefault();
             logger.info("File filters: " + fileFilters);
         }
 
-        return new FileFilterApplication().apply(sourceDir,
-                selectedFiles,
-                fileFilters);
+        return fileFilters;
     }
 }
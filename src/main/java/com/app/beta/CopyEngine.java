@@ -0,0 +1,1407 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/*
+ * The copy engine copies the filtered source files to the target directory.
+ * The source tree is walked once by the calling thread, which filters the
+ * files and creates each target directory with its first file; the files
+ * are handed over through a bounded queue to a pool of worker threads,
+ * which copy them in parallel, and the copied files optionally to the
+ * ArchiveStage. Each file is copied with the CopyStrategy for its size
+ * and the modes set, see getStrategy(); the small files in batches, see
+ * copyBatch(). The engine has no JavaFX dependencies; the CopyDialog and
+ * the CopyCommand run it, and the CopyMetrics MBean reads its counts.
+ */
+public class CopyEngine implements CopyMetrics.Source {
+
+
+    private final Path sourceDir;
+    private final Path targetDir;
+
+    // Number of worker threads copying the files.
+    private int workers = DEFAULT_WORKERS;
+
+    // Copy each file with a virtual thread, instead of the worker threads.
+    private boolean virtualThreads;
+
+    // Size of the chunks large files are copied in.
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    // Skip the files which are unchanged in the target.
+    private boolean syncMode;
+
+    // Rewrite only the changed blocks of the existing large target files.
+    private boolean deltaMode;
+
+    // Memory map the very large files, where the file stores allow it.
+    private boolean mappedMode;
+
+    // Keep the large files sparse in the target.
+    private boolean sparseMode;
+
+    // Records the copy progress so that the copy can be resumed; optional.
+    private CopyJournal journal;
+
+    // Compute the checksums of the files copied, for the manifest; optional.
+    private ChecksumAlgorithm checksumAlgorithm;
+    private CopyStrategy checksumStrategy;
+    private CopyManifest manifest;
+
+    // The entries of the earlier copy's manifest, for the files skipped in
+    // the sync mode; see addSkippedFile().
+    private Map<String, CopyManifest.Entry> earlierManifest = Map.of();
+
+    // Limit the bytes and the files copied per second; unlimited by default.
+    private final RateLimiter bytesLimiter = new RateLimiter();
+    private final RateLimiter filesLimiter = new RateLimiter();
+
+    // Strategies to copy the files up to one chunk which are not batched,
+    // and the larger files.
+    private final CopyStrategy streamStrategy = new StreamCopyStrategy();
+    private final CopyStrategy largeFileStrategy = new ChannelCopyStrategy();
+    private final CopyStrategy crossDeviceStrategy = new AsyncCopyStrategy();
+    private final CopyStrategy mappedStrategy = new MappedCopyStrategy();
+    private final CopyStrategy sparseStrategy = new SparseCopyStrategy();
+    private final CopyStrategy deltaStrategy = new DeltaCopyStrategy();
+
+    // The strategies, each with its buffer, which copy the batches of small
+    // files; one is taken per batch and given back after it, so there are
+    // at most as many as the batches copied at the same time. A pool rather
+    // than a ThreadLocal, as in the virtual thread mode each batch has a
+    // new thread.
+    private final Queue<CopyStrategy> bufferStrategies = new ConcurrentLinkedQueue<>();
+
+    // Notified with the work done so far: the count of the directories and
+    // files copied plus the bytes copied. See getTotalWork().
+    private LongConsumer progressListener = done -> {};
+
+    // Counters for total files and directories that are actually copied.
+    // These are updated concurrently by the worker threads; the counters
+    // updated per file or per chunk are striped, so that the workers do
+    // not contend for them. The copied files include the updated ones,
+    // i.e., the files which replaced an out of date target in the sync
+    // mode. The work done is an atomic, as its sum is needed each time.
+    private final LongAdder copiedFilesCount = new LongAdder();
+    private final LongAdder updatedFilesCount = new LongAdder();
+    private final LongAdder skippedFilesCount = new LongAdder();
+    private final LongAdder resumedFilesCount = new LongAdder();
+    private final AtomicInteger copiedDirsCount = new AtomicInteger();
+    private final LongAdder copiedBytesCount = new LongAdder();
+    private final LongAdder writtenBytesCount = new LongAdder();
+    private final AtomicLong workDone = new AtomicLong();
+    private final LongAdder errorsCount = new LongAdder();
+
+    // Counts of the filtered directories (except the source directory),
+    // files and bytes found by the walk so far; and whether the walk is
+    // completed, so that the counts are the totals.
+    private final AtomicInteger foundDirsCount = new AtomicInteger();
+    private final AtomicInteger foundFilesCount = new AtomicInteger();
+    private final AtomicLong foundBytesCount = new AtomicLong();
+    private volatile boolean walkCompleted;
+
+    // The ZIP file the copied files are added to, in the archive stage;
+    // optional. The stage of the running, or the last, copy.
+    private Path archiveFile;
+    private volatile ArchiveStage archiveStage;
+
+    // The running copy's executor and, in the virtual thread mode, the
+    // open files semaphore; for the metrics, see CopyMetrics.
+    private volatile ExecutorService runningExecutor;
+    private volatile Semaphore runningOpenFiles;
+    private volatile long startTime;
+
+    // Time taken by the last copy.
+    private long elapsedMillis;
+
+    // Whether the copy is paused; the threads wait on the lock while it is.
+    private volatile boolean paused;
+    private final Object pauseLock = new Object();
+
+    // Whether the running copy is cancelled or failed; unlike the copy
+    // context's isStopped(), not when it is paused.
+    private volatile BooleanSupplier isStopped = () -> false;
+
+    // The positions reached in the large files being copied, so that a
+    // file paused part way through is continued from its position.
+    private final Map<Path, Long> filePositions = new ConcurrentHashMap<>();
+
+    // Whether the source and the target are on different file stores, and
+    // whether both can be memory mapped; found at the start of a copy.
+    private boolean crossDevice;
+    private boolean mappedSupported;
+
+    // Files copied at the same time by the last copy: the workers, or the
+    // virtual threads' open files, within the file stores' limits; see
+    // StoreLimits.
+    private int concurrency;
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final int MIN_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_WORKERS =
+            Math.min(Runtime.getRuntime().availableProcessors(), 8);
+    public static final int MAX_WORKERS = 64;
+
+    // While paused, a cancel is checked this often.
+    private static final long PAUSE_CHECK_MILLIS = 100L;
+
+    // The time left is not estimated from less than this time.
+    private static final long MIN_ESTIMATE_MILLIS = 1000L;
+
+    // Files up to this size are copied in batches of up to BATCH_FILES.
+    public static final int SMALL_FILE_SIZE = 64 * 1024;
+
+    private static final int BATCH_FILES = 256;
+
+    // The inode number in the toString() of a Unix file key, for example:
+    // (dev=803,ino=1234). The JDK does not document this format; where the
+    // file key has no such number, the files are ordered by path instead.
+    private static final Pattern INODE_PATTERN = Pattern.compile("ino=(\\d+)");
+
+    // Files waiting for a worker, per worker. When the queue is full the
+    // walking thread waits, which throttles the walk.
+    static final int QUEUED_FILES_PER_WORKER = 256;
+
+    private static final Logger logger = Logger.getLogger("copy_app_logger");
+
+
+    public CopyEngine(Path sourceDir, Path targetDir) {
+
+        this.sourceDir = sourceDir;
+        this.targetDir = targetDir;
+    }
+
+    public Path getTargetDir() {
+
+        return targetDir;
+    }
+
+    public void setWorkers(int n) {
+
+        workers = Math.max(1, Math.min(n, MAX_WORKERS));
+    }
+    public int getWorkers() {
+
+        return workers;
+    }
+
+    /*
+     * In the virtual thread mode, each file or batch of small files is
+     * copied by its own virtual thread instead of by the pool of workers;
+     * a semaphore limits the files open at the same time and, as the
+     * bounded queue does for the pool, throttles the walk. The mode is set
+     * only if it is supported; see VirtualThreads.isSupported().
+     */
+    public void setVirtualThreads(boolean b) {
+
+        virtualThreads = b && VirtualThreads.isSupported();
+    }
+    public boolean getVirtualThreads() {
+
+        return virtualThreads;
+    }
+
+    /*
+     * Files larger than one chunk are copied chunk by chunk, so that their
+     * progress is seen and their copy can be paused or cancelled part way
+     * through.
+     */
+    public void setChunkSize(int bytes) {
+
+        chunkSize = Math.max(bytes, MIN_CHUNK_SIZE);
+    }
+    public int getChunkSize() {
+
+        return chunkSize;
+    }
+
+    /*
+     * Sets the limit of bytes copied per second, 0 for no limit. It can
+     * be changed while a copy is running. The bytes are accounted after
+     * each chunk, and when limited the chunks are made small enough to be
+     * copied in about a tenth of a second; so that large files are copied
+     * at a steady rate rather than in bursts.
+     */
+    public void setBytesPerSecond(long limit) {
+
+        bytesLimiter.setRate(limit);
+    }
+    public long getBytesPerSecond() {
+
+        return bytesLimiter.getRate();
+    }
+
+    /*
+     * Sets the limit of files copied per second, 0 for no limit. It can
+     * be changed while a copy is running.
+     */
+    public void setFilesPerSecond(long limit) {
+
+        filesLimiter.setRate(limit);
+    }
+    public long getFilesPerSecond() {
+
+        return filesLimiter.getRate();
+    }
+
+    /*
+     * In the sync mode, the files whose target has the same size and last
+     * modified time as the source are skipped; see copyFile().
+     */
+    public void setSyncMode(boolean b) {
+
+        syncMode = b;
+    }
+    public boolean getSyncMode() {
+
+        return syncMode;
+    }
+
+    /*
+     * In the delta mode, the large files which exist in the target are
+     * updated by rewriting only the blocks that differ; see
+     * DeltaCopyStrategy.
+     */
+    public void setDeltaMode(boolean b) {
+
+        deltaMode = b;
+    }
+    public boolean getDeltaMode() {
+
+        return deltaMode;
+    }
+
+    /*
+     * Sets the journal for the copy, so that it can be resumed after it is
+     * cancelled or the app stops; see CopyJournal. The engine closes the
+     * journal at the end of the copy, and deletes it if the copy completes.
+     */
+    public void setJournal(CopyJournal j) {
+
+        journal = j;
+    }
+
+    /*
+     * Sets the checksum algorithm, or null for no checksums. With an
+     * algorithm, the checksums of the files are computed as they are
+     * copied and written to a manifest, which the CopyVerifier checks the
+     * target against; see CopyManifest. Every file is then copied with
+     * ChecksumCopyStrategy; so the
+     * delta, sparse and mapped modes are not used, and a warning is logged
+     * at the start of the copy if any of them is set.
+     */
+    public void setChecksumAlgorithm(ChecksumAlgorithm algorithm) {
+
+        checksumAlgorithm = algorithm;
+        checksumStrategy = (algorithm == null) ? null : new ChecksumCopyStrategy(algorithm);
+    }
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+
+        return checksumAlgorithm;
+    }
+
+    public Path getManifestFile() {
+
+        return CopyManifest.getManifestFile(targetDir);
+    }
+
+    /*
+     * In the mapped mode, large files on local file systems are copied
+     * through memory mapped windows; see MappedCopyStrategy.
+     */
+    public void setMappedMode(boolean b) {
+
+        mappedMode = b;
+    }
+    public boolean getMappedMode() {
+
+        return mappedMode;
+    }
+
+    /*
+     * In the sparse mode, the blocks of zeros in large files are not
+     * written; see SparseCopyStrategy.
+     */
+    public void setSparseMode(boolean b) {
+
+        sparseMode = b;
+    }
+    public boolean getSparseMode() {
+
+        return sparseMode;
+    }
+
+    /*
+     * Sets the ZIP file the copied files are added to as they are copied,
+     * or null for none. The files skipped in the sync mode and the files
+     * of a resumed copy are also added, so the ZIP file has all the
+     * filtered files; the ZIP file is created with the first of them.
+     */
+    public void setArchiveFile(Path zipFile) {
+
+        archiveFile = zipFile;
+    }
+    public Path getArchiveFile() {
+
+        return archiveFile;
+    }
+
+    @Override
+    public int getArchivedFilesCount() {
+
+        ArchiveStage stage = archiveStage;
+
+        return (stage == null) ? 0 : stage.getArchivedFilesCount();
+    }
+
+    /*
+     * The count of the copied files waiting to be archived, during a copy.
+     */
+    @Override
+    public int getArchiveQueuedFilesCount() {
+
+        ArchiveStage stage = archiveStage;
+
+        return (stage == null) ? 0 : stage.getQueuedFilesCount();
+    }
+
+    /*
+     * Pauses the copy: the files being copied stop at the end of their
+     * current chunk and close their files, and no new files are started,
+     * until the copy is resumed or cancelled. A pause, as a cancel, takes
+     * effect within a chunk, also part way through a large file.
+     */
+    public void pause() {
+
+        paused = true;
+    }
+
+    public void resume() {
+
+        synchronized (pauseLock) {
+
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isPaused() {
+
+        return paused;
+    }
+
+    public void setProgressListener(LongConsumer listener) {
+
+        progressListener = listener;
+    }
+
+    @Override
+    public int getCopiedFilesCount() {
+
+        return copiedFilesCount.intValue();
+    }
+
+    public int getUpdatedFilesCount() {
+
+        return updatedFilesCount.intValue();
+    }
+
+    @Override
+    public int getSkippedFilesCount() {
+
+        return skippedFilesCount.intValue();
+    }
+
+    /*
+     * The files not copied as they were copied by the previous copy,
+     * which is resumed.
+     */
+    @Override
+    public int getResumedFilesCount() {
+
+        return resumedFilesCount.intValue();
+    }
+
+    @Override
+    public int getCopiedDirsCount() {
+
+        return copiedDirsCount.get();
+    }
+
+    public int getConcurrency() {
+
+        return concurrency;
+    }
+
+    public boolean isCrossDevice() {
+
+        return crossDevice;
+    }
+
+    public long getElapsedMillis() {
+
+        return elapsedMillis;
+    }
+
+    @Override
+    public long getCopiedBytesCount() {
+
+        return copiedBytesCount.sum();
+    }
+
+    /*
+     * The bytes actually written to the target. This is less than the
+     * bytes copied when the delta mode rewrites only the changed blocks,
+     * or the sparse mode skips the blocks of zeros.
+     */
+    @Override
+    public long getWrittenBytesCount() {
+
+        return writtenBytesCount.sum();
+    }
+
+    /*
+     * The count of the files which failed to copy. The copy stops after
+     * the first error, but the files being copied at the time may fail
+     * too.
+     */
+    @Override
+    public long getErrorsCount() {
+
+        return errorsCount.sum();
+    }
+
+    /*
+     * The count of the files waiting for a worker, during a copy. With the
+     * ArchiveStage's queue, it shows which stage is the bottleneck.
+     */
+    @Override
+    public int getQueuedFilesCount() {
+
+        ExecutorService executor = runningExecutor;
+
+        return (executor instanceof ThreadPoolExecutor) ?
+                ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    /*
+     * The count of the workers, or the virtual threads, copying a file
+     * or a batch of files, during a copy.
+     */
+    @Override
+    public int getActiveWorkersCount() {
+
+        ExecutorService executor = runningExecutor;
+        Semaphore openFiles = runningOpenFiles;
+
+        if (openFiles != null) {
+
+            return concurrency - openFiles.availablePermits();
+        }
+
+        return (executor instanceof ThreadPoolExecutor) ?
+                ((ThreadPoolExecutor) executor).getActiveCount() : 0;
+    }
+
+    /*
+     * The time since the start of the running copy, or the time taken by
+     * the last copy.
+     */
+    @Override
+    public long getRunningMillis() {
+
+        return (runningExecutor != null) ?
+                (System.currentTimeMillis() - startTime) : elapsedMillis;
+    }
+
+    /*
+     * The total work for the progress listener: each directory and file
+     * counts as one unit, plus one unit per byte. With this, a large file
+     * weighs as much as its size and an empty file still shows progress.
+     */
+    public static long getTotalWork(int dirsCount, int filesCount, long bytesCount) {
+
+        return dirsCount + filesCount + bytesCount;
+    }
+
+    /*
+     * Estimates the time left of a copy from the work done so far in the
+     * elapsed time; as the work is weighted by the bytes, so is the
+     * estimate. Returns -1 until there is work done to estimate from.
+     */
+    public static long getRemainingMillis(long done, long total, long elapsedMillis) {
+
+        if ((done <= 0) || (elapsedMillis < MIN_ESTIMATE_MILLIS)) {
+
+            return -1L;
+        }
+
+        return (long) (elapsedMillis * ((double) Math.max(total - done, 0L) / done));
+    }
+
+    /*
+     * Formats the time as h:mm:ss, or m:ss under an hour.
+     */
+    public static String formatDuration(long millis) {
+
+        long seconds = (millis + 999L) / 1000L;
+
+        return (seconds >= 3600L) ?
+                String.format("%d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L) :
+                String.format("%d:%02d", seconds / 60L, seconds % 60L);
+    }
+
+    public int getFoundDirsCount() {
+
+        return foundDirsCount.get();
+    }
+
+    @Override
+    public int getFoundFilesCount() {
+
+        return foundFilesCount.get();
+    }
+
+    public long getFoundBytesCount() {
+
+        return foundBytesCount.get();
+    }
+
+    /*
+     * The total work of the files and directories found so far, as by
+     * getTotalWork(); it is the total once isWalkCompleted() is true.
+     */
+    public long getFoundWork() {
+
+        return getTotalWork(foundDirsCount.get(), foundFilesCount.get(), foundBytesCount.get());
+    }
+
+    @Override
+    public boolean isWalkCompleted() {
+
+        return walkCompleted;
+    }
+
+    /*
+     * Copies the filtered files and directories from the source to the
+     * target directory. In case of any existing files in the target, they
+     * are replaced. The isCancelled supplier is checked before each
+     * directory and file; once it returns true no new copies are started.
+     * The first error raised by a worker stops the copy and is thrown,
+     * unless the copy is cancelled.
+     */
+    public void copy(Set<Path> filteredFiles, BooleanSupplier isCancelled)
+            throws IOException, InterruptedException {
+
+        copy(filteredFiles::contains,
+                (file, attrs) -> filteredFiles.contains(file),
+                isCancelled);
+    }
+
+    /*
+     * Copies the selected files which pass the file filters, filtering them
+     * as the source is walked; as FileFilterApplication.apply() and then
+     * copy() do, in one walk, so the copy starts at once. The counts of the filtered directories, files
+     * and bytes are found as the walk goes; see getFoundWork().
+     */
+    public void copy(Predicate<Path> isSelected,
+                     FileFilters filters,
+                     BooleanSupplier isCancelled)
+            throws IOException, InterruptedException {
+
+        copy(isSelected,
+                (file, attrs) -> isSelected.test(file) &&
+                        FileFilterApplication.accept(filters, file, attrs),
+                isCancelled);
+    }
+
+    private void copy(Predicate<Path> isDirSelected,
+                      BiPredicate<Path, BasicFileAttributes> isFileSelected,
+                      BooleanSupplier isCancelled)
+            throws IOException, InterruptedException {
+
+        copiedFilesCount.reset();
+        updatedFilesCount.reset();
+        skippedFilesCount.reset();
+        resumedFilesCount.reset();
+        copiedDirsCount.set(0);
+        copiedBytesCount.reset();
+        writtenBytesCount.reset();
+        workDone.set(0);
+        errorsCount.reset();
+        foundDirsCount.set(0);
+        foundFilesCount.set(0);
+        foundBytesCount.set(0);
+        walkCompleted = false;
+        startTime = System.currentTimeMillis();
+        FileStore sourceStore = Files.getFileStore(sourceDir);
+        FileStore targetStore = Files.getFileStore(targetDir);
+        crossDevice = ! sourceStore.equals(targetStore);
+        mappedSupported = mappedMode &&
+                MappedCopyStrategy.isSupported(sourceStore) &&
+                MappedCopyStrategy.isSupported(targetStore);
+        int storeLimit = StoreLimits.min(
+                StoreLimits.getConcurrency(sourceStore),
+                StoreLimits.getConcurrency(targetStore));
+        concurrency = StoreLimits.min(
+                virtualThreads ? VirtualThreads.MAX_OPEN_FILES : workers, storeLimit);
+
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        BooleanSupplier isStopped =
+                () -> isCancelled.getAsBoolean() || (failure.get() != null);
+        this.isStopped = isStopped;
+        filePositions.clear();
+        CopyContext context = newContext(isStopped);
+
+        ExecutorService executor = virtualThreads ?
+                VirtualThreads.newExecutor() : newExecutor(isStopped);
+        Semaphore openFiles = virtualThreads ? new Semaphore(concurrency) : null;
+        ArchiveStage archiveStage = (archiveFile != null) ?
+                new ArchiveStage(targetDir, archiveFile, isStopped, e -> fileFailed(failure, e)) :
+                null;
+        this.archiveStage = archiveStage;
+
+        if (archiveStage != null) {
+
+            archiveStage.start();
+        }
+
+        runningOpenFiles = openFiles;
+        runningExecutor = executor;
+        List<SourceFile> batch = new ArrayList<>();
+        manifest = null;
+
+        // The selected directories being walked which are not created in
+        // the target yet, the innermost first
+        Deque<Path> pendingDirs = new ArrayDeque<>();
+
+        earlierManifest = Map.of();
+
+        try {
+            if (checksumAlgorithm != null) {
+
+                // A resumed copy adds to the manifest of the earlier copy;
+                // else, a sync keeps the entries of its skipped files.
+                boolean append = (journal != null) && (journal.getCompletedFilesCount() > 0);
+                Path manifestFile = getManifestFile();
+
+                if (syncMode && (! append) &&
+                        (CopyManifest.readAlgorithm(manifestFile) == checksumAlgorithm)) {
+
+                    earlierManifest = CopyManifest.read(manifestFile);
+                }
+
+                manifest = CopyManifest.open(targetDir, checksumAlgorithm, append);
+
+                if (deltaMode || sparseMode || mappedMode) {
+
+                    logger.warning("With checksums, the files are copied whole: " +
+                            "the delta, sparse and mapped modes are not used.");
+                }
+            }
+
+            Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+
+                /*
+                 * The directories are created with their first file.
+                 */
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir,
+                                                         BasicFileAttributes attrs) {
+
+                    awaitResume(isStopped);
+
+                    if (isStopped.getAsBoolean()) {
+
+                        return FileVisitResult.TERMINATE;
+                    }
+
+                    if (! isDirSelected.test(dir)) {
+
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    pendingDirs.push(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+                        throws IOException {
+
+                    if (exc != null) {
+
+                        throw exc;
+                    }
+
+                    if (dir.equals(pendingDirs.peek())) {
+
+                        // No file in the directory was copied
+                        pendingDirs.pop();
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                /*
+                 * Creates the pending directories, the outermost first.
+                 */
+                private void createPendingDirs()
+                        throws IOException {
+
+                    while (! pendingDirs.isEmpty()) {
+
+                        Path dir = pendingDirs.removeLast();
+                        Path target = targetDir.resolve(sourceDir.relativize(dir));
+
+                        try {
+                            Files.copy(dir, target);
+                            copiedDirsCount.incrementAndGet();
+                        }
+                        catch (FileAlreadyExistsException e) {
+
+                            if (! Files.isDirectory(target)) {
+
+                                throw e;
+                            }
+                        }
+
+                        if (! dir.equals(sourceDir)) {
+
+                            // An existing directory also counts as work done
+                            foundDirsCount.incrementAndGet();
+                            progressListener.accept(workDone.incrementAndGet());
+                        }
+                    }
+                }
+
+                /*
+                 * Hand over the files to the workers; the small files
+                 * are collected into batches.
+                 */
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs)
+                        throws IOException {
+
+                    awaitResume(isStopped);
+
+                    if (isStopped.getAsBoolean()) {
+
+                        return FileVisitResult.TERMINATE;
+                    }
+
+                    if (! isFileSelected.test(file, attrs)) {
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    createPendingDirs();
+                    foundFilesCount.incrementAndGet();
+                    foundBytesCount.addAndGet(attrs.size());
+
+                    if (attrs.size() <= SMALL_FILE_SIZE) {
+
+                        batch.add(new SourceFile(file, attrs));
+
+                        if ((batch.size() >= BATCH_FILES) &&
+                                (! submitBatch(executor, openFiles, batch, context, failure))) {
+
+                            return FileVisitResult.TERMINATE;
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    boolean submitted = WorkerPools.execute(executor, openFiles, () -> {
+
+                        if (isStopped.getAsBoolean()) {
+
+                            return;
+                        }
+
+                        try {
+                            copyFile(file, attrs, context, streamStrategy);
+                        }
+                        catch (IOException e) {
+
+                            fileFailed(failure, e);
+                        }
+                    });
+
+                    return submitted ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+            });
+
+            if (! batch.isEmpty()) {
+
+                submitBatch(executor, openFiles, batch, context, failure);
+            }
+
+            walkCompleted = ! isStopped.getAsBoolean();
+        }
+        finally {
+            try {
+                WorkerPools.awaitWorkers(executor, isStopped);
+            }
+            finally {
+                if (archiveStage != null) {
+
+                    archiveStage.finish(walkCompleted);
+                }
+
+                elapsedMillis = System.currentTimeMillis() - startTime;
+                runningExecutor = null;
+                runningOpenFiles = null;
+            }
+
+            if (journal != null) {
+
+                journal.close();
+            }
+
+            if (manifest != null) {
+
+                manifest.close();
+            }
+
+            earlierManifest = Map.of();
+        }
+
+        if (isCancelled.getAsBoolean()) {
+
+            return;
+        }
+
+        if (failure.get() != null) {
+
+            throw failure.get();
+        }
+
+        if (journal != null) {
+
+            journal.delete();
+        }
+    }
+
+    /*
+     * Copies a file with the strategy for its size. In the sync mode the
+     * target's size and last modified time are compared with the source
+     * attributes obtained during the walk: an unchanged target is skipped,
+     * and a copied target gets the source's last modified time so that it
+     * is found unchanged by the next sync. A file in the journal of a
+     * resumed copy is not copied again if its target has the source size.
+     */
+    private void copyFile(Path file,
+                          BasicFileAttributes attrs,
+                          CopyContext context,
+                          CopyStrategy smallFileStrategy)
+            throws IOException {
+
+        awaitResume(isStopped);
+
+        if (isStopped.getAsBoolean()) {
+
+            return;
+        }
+
+        Path target = targetDir.resolve(sourceDir.relativize(file));
+        BasicFileAttributes targetAttrs = null;
+
+        if (syncMode || deltaMode || (journal != null)) {
+
+            targetAttrs = readAttributesIfExists(target);
+
+            if ((journal != null) &&
+                    journal.isCompleted(getRelativePath(file), attrs) &&
+                    (targetAttrs != null) &&
+                    (targetAttrs.size() == attrs.size())) {
+
+                resumedFilesCount.increment();
+                progressListener.accept(workDone.addAndGet(1 + attrs.size()));
+                archive(target);
+                return;
+            }
+
+            if (syncMode && isUnchanged(attrs, targetAttrs)) {
+
+                addSkippedFile(file, attrs, target);
+                skippedFilesCount.increment();
+                progressListener.accept(workDone.addAndGet(1 + attrs.size()));
+                archive(target);
+                return;
+            }
+        }
+
+        CopyStrategy strategy = getStrategy(attrs, targetAttrs, context, smallFileStrategy);
+        acquire(filesLimiter, 1, context);
+
+        // A file paused part way through is continued from its position
+        // when the copy is resumed. If the copy is cancelled instead, the
+        // partially copied target is kept only for the journal.
+        while (! strategy.copy(file, target, attrs, context)) {
+
+            awaitResume(isStopped);
+
+            if (isStopped.getAsBoolean()) {
+
+                if (journal == null) {
+
+                    Files.deleteIfExists(target);
+                }
+
+                return; // stopped
+            }
+        }
+
+        filePositions.remove(file);
+
+        if (syncMode) {
+
+            Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+
+            if (targetAttrs != null) {
+
+                updatedFilesCount.increment();
+            }
+        }
+
+        if (journal != null) {
+
+            journal.fileCompleted(getRelativePath(file), attrs);
+        }
+
+        copiedFilesCount.increment();
+        progressListener.accept(workDone.incrementAndGet());
+        archive(target);
+    }
+
+    /*
+     * Adds a file skipped in the sync mode to the manifest, if any: with
+     * the checksum of the earlier copy's manifest if its entry has the
+     * same size and modified time, as the file is unchanged since; or else
+     * with the checksum of the target, which is read for it.
+     */
+    private void addSkippedFile(Path file, BasicFileAttributes attrs, Path target)
+            throws IOException {
+
+        if (manifest == null) {
+
+            return;
+        }
+
+        String relativePath = getRelativePath(file);
+        CopyManifest.Entry entry = earlierManifest.get(relativePath);
+
+        if ((entry != null) && entry.matches(attrs)) {
+
+            manifest.fileDigested(relativePath, attrs, entry.checksum);
+            return;
+        }
+
+        FileDigest digest = new FileDigest(checksumAlgorithm);
+        ByteBuffer buffer = ByteBuffer.allocate(
+                (int) Math.max(1L, Math.min(attrs.size(), ChecksumCopyStrategy.BUFFER_SIZE)));
+
+        if (digest.update(target, attrs.size(), buffer, isStopped)) {
+
+            manifest.fileDigested(relativePath, attrs, digest.getValue());
+        }
+    }
+
+    /*
+     * Hands over the copied target file to the archive stage, if any.
+     */
+    private void archive(Path target) {
+
+        ArchiveStage stage = archiveStage;
+
+        if (stage != null) {
+
+            stage.add(target);
+        }
+    }
+
+    /*
+     * Waits while the copy is paused, until it is resumed or stopped. In
+     * case the thread is interrupted, i.e. the copy is cancelled, the wait
+     * ends and the thread's interrupted status is set.
+     */
+    private void awaitResume(BooleanSupplier isStopped) {
+
+        synchronized (pauseLock) {
+
+            while (paused && (! isStopped.getAsBoolean())) {
+
+                try {
+                    pauseLock.wait(PAUSE_CHECK_MILLIS);
+                }
+                catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+     * Records the error of a file copy; the first error stops the copy.
+     */
+    private void fileFailed(AtomicReference<IOException> failure, IOException e) {
+
+        errorsCount.increment();
+        failure.compareAndSet(null, e);
+    }
+
+    /*
+     * Waits for the permits of the rate limiter. In case the worker is
+     * interrupted, i.e. the copy is cancelled, the wait ends and the
+     * thread's interrupted status is set.
+     */
+    private static void acquire(RateLimiter limiter, long permits, CopyContext context) {
+
+        try {
+            limiter.acquire(permits, context::isStopped);
+        }
+        catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String getRelativePath(Path file) {
+
+        return sourceDir.relativize(file).toString();
+    }
+
+    /*
+     * A source file with its attributes obtained during the walk, in a
+     * batch of small files.
+     */
+    private static class SourceFile {
+
+        final Path path;
+        final BasicFileAttributes attrs;
+        long inode;
+
+        SourceFile(Path path, BasicFileAttributes attrs) {
+
+            this.path = path;
+            this.attrs = attrs;
+        }
+    }
+
+    /*
+     * Hands over a copy of the batch to a worker and clears the batch.
+     * Returns false if the walking thread was interrupted.
+     */
+    private boolean submitBatch(ExecutorService executor,
+                                Semaphore openFiles,
+                                List<SourceFile> batch,
+                                CopyContext context,
+                                AtomicReference<IOException> failure) {
+
+        List<SourceFile> files = new ArrayList<>(batch);
+        batch.clear();
+
+        return WorkerPools.execute(executor, openFiles, () -> {
+
+            try {
+                copyBatch(files, context);
+            }
+            catch (IOException e) {
+
+                fileFailed(failure, e);
+            }
+        });
+    }
+
+    /*
+     * Copies a batch of small files, ordered by directory and inode, with
+     * a buffer reused from batch to batch. Where the file key has no
+     * inode number, the files of a directory are copied in path order.
+     */
+    private void copyBatch(List<SourceFile> files, CopyContext context)
+            throws IOException {
+
+        for (SourceFile f : files) {
+
+            f.inode = getInode(f.attrs);
+        }
+
+        files.sort(Comparator.comparing((SourceFile f) -> f.path.getParent())
+                .thenComparing((f1, f2) -> Long.compareUnsigned(f1.inode, f2.inode))
+                .thenComparing(f -> f.path));
+        CopyStrategy bufferStrategy = bufferStrategies.poll();
+
+        if (bufferStrategy == null) {
+
+            bufferStrategy = new BufferCopyStrategy(SMALL_FILE_SIZE);
+        }
+
+        try {
+            for (SourceFile f : files) {
+
+                if (isStopped.getAsBoolean()) {
+
+                    return;
+                }
+
+                copyFile(f.path, f.attrs, context, bufferStrategy);
+            }
+        }
+        finally {
+            bufferStrategies.offer(bufferStrategy);
+        }
+    }
+
+    /*
+     * The inode number of the file, unsigned, parsed from its file key's
+     * toString(); see INODE_PATTERN. Returns 0 if the file key has no
+     * inode number, so the files are ordered by path.
+     */
+    private static long getInode(BasicFileAttributes attrs) {
+
+        Object fileKey = attrs.fileKey();
+
+        if (fileKey != null) {
+
+            Matcher m = INODE_PATTERN.matcher(fileKey.toString());
+
+            try {
+                if (m.find()) {
+
+                    return Long.parseUnsignedLong(m.group(1));
+                }
+            }
+            catch (NumberFormatException e) {
+
+                // not an inode number after all
+            }
+        }
+
+        return 0L;
+    }
+
+    /*
+     * With a checksum algorithm, all the files are copied with the
+     * checksum strategy. Otherwise, small files are copied with the given
+     * strategy. Large files are copied in chunks, or updated in place in
+     * the delta mode when the target file exists. In the sparse mode, they
+     * are copied without their blocks of zeros. In the mapped mode, they
+     * are memory mapped if both the file stores are local; there is no
+     * size from which mapping is faster than transferTo, see
+     * CopyStrategyBenchmark, so the mode is only chosen by the user.
+     * Otherwise, the chunks are copied with transferTo, or between
+     * devices with overlapped reads and writes.
+     */
+    private CopyStrategy getStrategy(BasicFileAttributes attrs,
+                                     BasicFileAttributes targetAttrs,
+                                     CopyContext context,
+                                     CopyStrategy smallFileStrategy) {
+
+        if (checksumStrategy != null) {
+
+            return checksumStrategy;
+        }
+
+        if (attrs.size() <= context.getChunkSize()) {
+
+            return smallFileStrategy;
+        }
+
+        if (deltaMode && (targetAttrs != null) && targetAttrs.isRegularFile()) {
+
+            return deltaStrategy;
+        }
+
+        if (sparseMode) {
+
+            return sparseStrategy;
+        }
+
+        if (mappedSupported) {
+
+            return mappedStrategy;
+        }
+
+        return crossDevice ? crossDeviceStrategy : largeFileStrategy;
+    }
+
+    private static BasicFileAttributes readAttributesIfExists(Path file)
+            throws IOException {
+
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        }
+        catch (NoSuchFileException e) {
+
+            return null;
+        }
+    }
+
+    /*
+     * The last modified times are compared in milliseconds, as some file
+     * systems store them with a lower precision than others.
+     */
+    private static boolean isUnchanged(BasicFileAttributes source,
+                                       BasicFileAttributes target) {
+
+        return (target != null) &&
+                target.isRegularFile() &&
+                (target.size() == source.size()) &&
+                (target.lastModifiedTime().toMillis() ==
+                        source.lastModifiedTime().toMillis());
+    }
+
+    /*
+     * The context passed to the copy strategies. The copied and written
+     * bytes are added to the counters, and the copied bytes are reported
+     * to the progress listener.
+     */
+    private CopyContext newContext(BooleanSupplier isStopped) {
+
+        return new CopyContext() {
+
+            /*
+             * A paused copy is stopped too, to close the files.
+             */
+            @Override
+            public boolean isStopped() {
+
+                return isStopped.getAsBoolean() || paused;
+            }
+
+            /*
+             * When the bytes per second are limited, a chunk is at most
+             * a tenth of the limit.
+             */
+            @Override
+            public int getChunkSize() {
+
+                long limit = bytesLimiter.getRate();
+
+                if (limit > 0) {
+
+                    return (int) Math.max(MIN_CHUNK_SIZE, Math.min(chunkSize, limit / 10));
+                }
+
+                return chunkSize;
+            }
+
+            @Override
+            public void bytesCopied(long count, long written) {
+
+                copiedBytesCount.add(count);
+                writtenBytesCount.add(written);
+                progressListener.accept(workDone.addAndGet(count));
+                acquire(bytesLimiter, count, this);
+            }
+
+            @Override
+            public boolean isResumable() {
+
+                return (journal != null) || paused;
+            }
+
+            /*
+             * The position reached before the file was paused, or else
+             * the position recorded in the journal; if the target has
+             * been written up to it.
+             */
+            @Override
+            public long getResumePosition(Path source, BasicFileAttributes attrs)
+                    throws IOException {
+
+                Long pausedPosition = filePositions.get(source);
+
+                if ((pausedPosition == null) && (journal == null)) {
+
+                    return 0L;
+                }
+
+                long position = (pausedPosition != null) ? pausedPosition :
+                        journal.getOffset(getRelativePath(source), attrs);
+                Path target = targetDir.resolve(sourceDir.relativize(source));
+                BasicFileAttributes targetAttrs = readAttributesIfExists(target);
+
+                if ((targetAttrs == null) || (targetAttrs.size() < position)) {
+
+                    // Copied again from the start
+                    filePositions.remove(source);
+                    return 0L;
+                }
+
+                if ((pausedPosition == null) && (position > 0)) {
+
+                    // The bytes copied by an earlier copy count as work done
+                    filePositions.put(source, position);
+                    progressListener.accept(workDone.addAndGet(position));
+                }
+
+                return position;
+            }
+
+            @Override
+            public void positionReached(Path source, BasicFileAttributes attrs, long position)
+                    throws IOException {
+
+                filePositions.put(source, position);
+
+                if (journal != null) {
+
+                    journal.offsetReached(getRelativePath(source), attrs, position);
+                }
+            }
+
+            @Override
+            public void fileDigested(Path source, BasicFileAttributes attrs, String checksum)
+                    throws IOException {
+
+                if (manifest != null) {
+
+                    manifest.fileDigested(getRelativePath(source), attrs, checksum);
+                }
+            }
+        };
+    }
+
+    /*
+     * A fixed pool of daemon worker threads, as many as the concurrency
+     * allowed by the file stores, with a bounded queue. When all the
+     * workers are busy and the queue is full, the walking thread waits for
+     * room in the queue; the hand-over is rejected if the copy is stopped
+     * or the walking thread is interrupted.
+     */
+    private ThreadPoolExecutor newExecutor(BooleanSupplier isStopped) {
+
+        return WorkerPools.newWorkerPool("copy-worker-", concurrency,
+                concurrency * QUEUED_FILES_PER_WORKER, isStopped);
+    }
+}
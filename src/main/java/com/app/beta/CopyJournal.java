@@ -0,0 +1,264 @@
+package com.app.beta;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * An append-only journal of a copy job, kept in the target directory.
+ * It records the files completely copied, and for large files the byte
+ * offset copied so far. In case a copy is cancelled or the app stops part
+ * way through, the next copy of the same source to the same target can
+ * resume: the files in the journal are not copied again and the large
+ * files continue from their offset. The journal is deleted when a copy
+ * completes.
+ *
+ * The journal is a text file with one tab separated entry per line:
+ *   S  source directory         (the first line)
+ *   F  size, modified time in milliseconds, relative path
+ *                               (a file completely copied)
+ *   P  offset, size, modified time in milliseconds, relative path
+ *                               (a large file copied up to the offset)
+ * The size and modified time are the source file's when it was copied;
+ * an entry is used only if the source still has them, so a source
+ * changed since is copied again.
+ * The entries are written to a buffer and the buffer is written to the
+ * file when full, or at most once every FLUSH_INTERVAL_MILLIS; so the
+ * journal does not cost a disk write per file.
+ */
+public class CopyJournal implements Closeable {
+
+
+    public static final String FILE_NAME = ".copy-journal";
+    private static final long FLUSH_INTERVAL_MILLIS = 1000L;
+
+    private final Path journalFile;
+
+    // The entries loaded from the journal of a previous copy, when resumed.
+    private final Map<String, Entry> completedFiles = new HashMap<>();
+    private final Map<String, Entry> partialFiles = new HashMap<>();
+
+    private final BufferedWriter writer;
+    private long lastFlushTime;
+
+
+    /*
+     * A file copied up to the offset, as of the source size and modified
+     * time recorded with it; a completed file is copied up to its size.
+     */
+    private static class Entry {
+
+        final long offset;
+        final long size;
+        final long modifiedTime;
+
+        Entry(long offset, long size, long modifiedTime) {
+
+            this.offset = offset;
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+
+            return (size == attrs.size()) &&
+                    (modifiedTime == attrs.lastModifiedTime().toMillis());
+        }
+    }
+
+    /*
+     * Opens the journal for a copy of the source to the target directory.
+     * If resume is true the entries of an existing journal for the same
+     * source are loaded and new entries are appended to it; otherwise a
+     * new journal is started.
+     */
+    private CopyJournal(Path sourceDir, Path targetDir, boolean resume)
+            throws IOException {
+
+        journalFile = targetDir.resolve(FILE_NAME);
+
+        if (resume && sourceDir.toString().equals(readSourceDir(journalFile))) {
+
+            load();
+            writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                    CREATE, WRITE, APPEND);
+        }
+        else {
+            writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                    CREATE, WRITE, TRUNCATE_EXISTING);
+            writeLine("S\t" + sourceDir);
+            writer.flush();
+        }
+
+        lastFlushTime = System.currentTimeMillis();
+    }
+
+    public static CopyJournal open(Path sourceDir, Path targetDir, boolean resume)
+            throws IOException {
+
+        return new CopyJournal(sourceDir, targetDir, resume);
+    }
+
+    /*
+     * Returns true if the target directory has the journal of a copy
+     * from the source directory which has not completed.
+     */
+    public static boolean exists(Path sourceDir, Path targetDir) {
+
+        try {
+            return sourceDir.toString()
+                    .equals(readSourceDir(targetDir.resolve(FILE_NAME)));
+        }
+        catch (IOException e) {
+
+            return false;
+        }
+    }
+
+    private static String readSourceDir(Path journalFile)
+            throws IOException {
+
+        try (BufferedReader reader =
+                     Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+
+            String line = reader.readLine();
+            return ((line != null) && line.startsWith("S\t")) ?
+                    line.substring(2) : null;
+        }
+        catch (NoSuchFileException e) {
+
+            return null;
+        }
+    }
+
+    /*
+     * Reads the entries of the existing journal. The lines which cannot
+     * be parsed, for example the last line written at the time of a
+     * crash, are ignored.
+     */
+    private void load()
+            throws IOException {
+
+        try (BufferedReader reader =
+                     Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                // The path is the last field, and can have tabs
+                String [] fields = line.split("\t", line.startsWith("F\t") ? 4 : 5);
+
+                try {
+                    if (fields[0].equals("F") && (fields.length == 4)) {
+
+                        long size = Long.parseLong(fields[1]);
+                        completedFiles.put(fields[3], new Entry(size, size,
+                                Long.parseLong(fields[2])));
+                    }
+                    else if (fields[0].equals("P") && (fields.length == 5)) {
+
+                        partialFiles.put(fields[4], new Entry(
+                                Long.parseLong(fields[1]),
+                                Long.parseLong(fields[2]),
+                                Long.parseLong(fields[3])));
+                    }
+                }
+                catch (NumberFormatException e) {
+
+                    // ignore the entry
+                }
+            }
+        }
+    }
+
+    public int getCompletedFilesCount() {
+
+        return completedFiles.size();
+    }
+
+    /*
+     * Returns true if the file was completely copied by a previous copy,
+     * and the source file has the same size and modified time as then.
+     */
+    public boolean isCompleted(String relativePath, BasicFileAttributes attrs) {
+
+        Entry completed = completedFiles.get(relativePath);
+        return (completed != null) && completed.matches(attrs);
+    }
+
+    /*
+     * Returns the offset up to which the file was copied by a previous
+     * copy, or 0. The offset is valid only if the source file has the
+     * same size and modified time as when it was recorded.
+     */
+    public long getOffset(String relativePath, BasicFileAttributes attrs) {
+
+        Entry partial = partialFiles.get(relativePath);
+
+        if ((partial == null) || (! partial.matches(attrs))) {
+
+            return 0L;
+        }
+
+        return partial.offset;
+    }
+
+    public synchronized void fileCompleted(String relativePath, BasicFileAttributes attrs)
+            throws IOException {
+
+        writeLine("F\t" + attrs.size() + "\t" +
+                attrs.lastModifiedTime().toMillis() + "\t" + relativePath);
+    }
+
+    public synchronized void offsetReached(String relativePath,
+                                           BasicFileAttributes attrs,
+                                           long offset)
+            throws IOException {
+
+        writeLine("P\t" + offset + "\t" + attrs.size() + "\t" +
+                attrs.lastModifiedTime().toMillis() + "\t" + relativePath);
+    }
+
+    private void writeLine(String line)
+            throws IOException {
+
+        writer.write(line);
+        writer.newLine();
+        long now = System.currentTimeMillis();
+
+        if (now - lastFlushTime >= FLUSH_INTERVAL_MILLIS) {
+
+            writer.flush();
+            lastFlushTime = now;
+        }
+    }
+
+    @Override
+    public synchronized void close()
+            throws IOException {
+
+        writer.close();
+    }
+
+    /*
+     * Deletes the journal, after the copy has completed.
+     */
+    public synchronized void delete()
+            throws IOException {
+
+        writer.close();
+        Files.deleteIfExists(journalFile);
+    }
+}
@@ -0,0 +1,182 @@
+package com.app.beta;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * The checksums of the files copied, for verifying the copy later. The
+ * manifest is created next to the target directory, as the ZIP file is:
+ * for the target directory "backup" it is "backup.manifest". Checksums
+ * are computed during the copy; see ChecksumCopyStrategy. The files which
+ * are not copied, i.e. skipped in the sync mode, are in the manifest too:
+ * with their entry in the manifest of the earlier copy if it has the same
+ * size and modified time, or else with the checksum of the target.
+ *
+ * The manifest is a text file with one tab separated line per file:
+ *   checksum, size, modified time in milliseconds, relative path
+ * after a first line with the algorithm:
+ *   # CRC32C
+ * A resumed copy appends to the manifest of the copy it resumes; a file
+ * found more than once has the checksum of its last line.
+ */
+public class CopyManifest implements Closeable {
+
+
+    public static final String FILE_EXTENSION = ".manifest";
+
+    private final Path manifestFile;
+    private final BufferedWriter writer;
+
+
+    private CopyManifest(Path manifestFile, ChecksumAlgorithm algorithm, boolean append)
+            throws IOException {
+
+        this.manifestFile = manifestFile;
+
+        if (append && (algorithm == readAlgorithm(manifestFile))) {
+
+            writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8,
+                    CREATE, WRITE, APPEND);
+        }
+        else {
+            writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8,
+                    CREATE, WRITE, TRUNCATE_EXISTING);
+            writer.write("# " + algorithm);
+            writer.newLine();
+        }
+    }
+
+    /*
+     * Opens the manifest of the target directory. If append is true and
+     * the existing manifest has the same algorithm, the entries are added
+     * to it; otherwise a new manifest is started.
+     */
+    public static CopyManifest open(Path targetDir, ChecksumAlgorithm algorithm, boolean append)
+            throws IOException {
+
+        return new CopyManifest(getManifestFile(targetDir), algorithm, append);
+    }
+
+    public static Path getManifestFile(Path targetDir) {
+
+        return targetDir.resolveSibling(targetDir.getFileName() + FILE_EXTENSION);
+    }
+
+    public Path getPath() {
+
+        return manifestFile;
+    }
+
+    public synchronized void fileDigested(String relativePath,
+                                          BasicFileAttributes attrs,
+                                          String checksum)
+            throws IOException {
+
+        writer.write(checksum + "\t" + attrs.size() + "\t" +
+                attrs.lastModifiedTime().toMillis() + "\t" + relativePath);
+        writer.newLine();
+    }
+
+    @Override
+    public synchronized void close()
+            throws IOException {
+
+        writer.close();
+    }
+
+    /*
+     * Returns the algorithm of the manifest, or null if there is no
+     * manifest or its first line is not an algorithm.
+     */
+    public static ChecksumAlgorithm readAlgorithm(Path manifestFile)
+            throws IOException {
+
+        try (BufferedReader reader =
+                     Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+
+            String line = reader.readLine();
+            return ((line != null) && line.startsWith("# ")) ?
+                    ChecksumAlgorithm.lookup(line.substring(2)) : null;
+        }
+        catch (NoSuchFileException e) {
+
+            return null;
+        }
+    }
+
+    /*
+     * Reads the entries of the manifest, in the order of the files, by
+     * relative path. The lines which cannot be parsed are ignored.
+     */
+    public static Map<String, Entry> read(Path manifestFile)
+            throws IOException {
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+
+        try (BufferedReader reader =
+                     Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                String [] fields = line.split("\t", 4);
+
+                if (line.startsWith("#") || (fields.length != 4)) {
+
+                    continue;
+                }
+
+                try {
+                    entries.put(fields[3], new Entry(fields[0],
+                            Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                }
+                catch (NumberFormatException e) {
+
+                    // ignore the entry
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    /*
+     * A file's checksum, size and modified time, as recorded in the
+     * manifest.
+     */
+    public static class Entry {
+
+        final String checksum;
+        final long size;
+        final long modifiedMillis;
+
+        Entry(String checksum, long size, long modifiedMillis) {
+
+            this.checksum = checksum;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        /*
+         * Returns true if the entry is of the file with these attributes.
+         */
+        boolean matches(BasicFileAttributes attrs) {
+
+            return (size == attrs.size()) &&
+                    (modifiedMillis == attrs.lastModifiedTime().toMillis());
+        }
+    }
+}
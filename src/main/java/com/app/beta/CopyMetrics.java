@@ -0,0 +1,311 @@
+package com.app.beta;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+
+/*
+ * The MBean of the copy subsystem, registered with the platform MBean
+ * server as "com.app.beta:type=CopyMetrics" on request; see register().
+ * It shows the metrics of the
+ * current, or the last, copy job: a copy by the CopyEngine, a copy to
+ * several targets by the FanOutCopyEngine, or an archive of the archive
+ * only mode; see Source. The values are read from the job when asked for,
+ * so a copy costs nothing more than its own counters. The phase is set by
+ * the Copy dialog or the command line program, as the filtering, the move
+ * and the verify are done outside the copy engine's copy.
+ * There is one instance for the app.
+ */
+public class CopyMetrics implements CopyMetricsMBean {
+
+
+    public static final String OBJECT_NAME = "com.app.beta:type=CopyMetrics";
+
+    private static final CopyMetrics INSTANCE = new CopyMetrics();
+    private static final Logger logger = Logger.getLogger("copy_app_logger");
+
+    private volatile Source source;
+    private volatile CopyPhase phase = CopyPhase.IDLE;
+
+    // The last reading of the bytes copied, for the current throughput.
+    private long lastBytesCopied;
+    private long lastReadingTime;
+
+
+    /*
+     * The counts of a copy job, read by the metrics. The counts which a
+     * job does not have are 0; for example, an archive has no directories
+     * copied.
+     */
+    public interface Source {
+
+        long getCopiedBytesCount();
+
+        long getWrittenBytesCount();
+
+        int getCopiedFilesCount();
+
+        default int getSkippedFilesCount() {
+
+            return 0;
+        }
+
+        default int getResumedFilesCount() {
+
+            return 0;
+        }
+
+        int getCopiedDirsCount();
+
+        long getErrorsCount();
+
+        int getFoundFilesCount();
+
+        boolean isWalkCompleted();
+
+        default int getQueuedFilesCount() {
+
+            return 0;
+        }
+
+        default int getActiveWorkersCount() {
+
+            return 0;
+        }
+
+        default int getArchiveQueuedFilesCount() {
+
+            return 0;
+        }
+
+        default int getArchivedFilesCount() {
+
+            return 0;
+        }
+
+        /*
+         * The time since the start of the running job, or the time taken
+         * by the last one.
+         */
+        long getRunningMillis();
+
+        default boolean isPaused() {
+
+            return false;
+        }
+    }
+
+    private CopyMetrics() {
+    }
+
+    /*
+     * Returns the metrics instance. It is fed by the copy jobs whether its
+     * MBean is registered or not.
+     */
+    public static CopyMetrics getInstance() {
+
+        return INSTANCE;
+    }
+
+    /*
+     * Returns the metrics instance, registering the MBean the first time.
+     */
+    public static CopyMetrics getRegisteredInstance() {
+
+        INSTANCE.register();
+        return INSTANCE;
+    }
+
+    /*
+     * Returns true if JMX monitoring is turned on for the JVM, with the
+     * com.sun.management.jmxremote properties; the platform MBean server
+     * is then started by the JMX agent anyway.
+     */
+    public static boolean isJmxRemoteEnabled() {
+
+        return (System.getProperty("com.sun.management.jmxremote") != null) ||
+                (System.getProperty("com.sun.management.jmxremote.port") != null);
+    }
+
+    /*
+     * Registers the MBean, if it is not. The first registration starts
+     * the platform MBean server, which takes a good part of a second; so
+     * the command line program registers only when asked to. In case the
+     * MBean cannot be registered, the app works without it.
+     */
+    public synchronized void register() {
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if (! server.isRegistered(name)) {
+
+                server.registerMBean(this, name);
+            }
+        }
+        catch (InstanceAlreadyExistsException e) {
+
+            // registered by another thread
+        }
+        catch (JMException | SecurityException e) {
+
+            logger.warning("Copy metrics MBean not registered: " + e);
+        }
+    }
+
+    /*
+     * Sets the source of the metrics of a new copy job, in the FILTERING
+     * phase.
+     */
+    public synchronized void startJob(Source job) {
+
+        source = job;
+        phase = CopyPhase.FILTERING;
+        lastBytesCopied = 0L;
+        lastReadingTime = System.currentTimeMillis();
+    }
+
+    public void setPhase(CopyPhase p) {
+
+        phase = p;
+    }
+
+    /*
+     * A paused copy is in the PAUSED phase until it is resumed.
+     */
+    @Override
+    public String getPhase() {
+
+        Source job = source;
+        CopyPhase p = phase;
+
+        if ((job != null) && job.isPaused() &&
+                ((p == CopyPhase.FILTERING) || (p == CopyPhase.COPYING))) {
+
+            return CopyPhase.PAUSED.toString();
+        }
+
+        return p.toString();
+    }
+
+    @Override
+    public long getBytesCopied() {
+
+        Source job = source;
+        return (job == null) ? 0L : job.getCopiedBytesCount();
+    }
+
+    @Override
+    public long getBytesWritten() {
+
+        Source job = source;
+        return (job == null) ? 0L : job.getWrittenBytesCount();
+    }
+
+    @Override
+    public int getFilesCopied() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getCopiedFilesCount();
+    }
+
+    @Override
+    public int getFilesSkipped() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getSkippedFilesCount();
+    }
+
+    @Override
+    public int getFilesResumed() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getResumedFilesCount();
+    }
+
+    @Override
+    public int getDirectoriesCopied() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getCopiedDirsCount();
+    }
+
+    @Override
+    public long getErrors() {
+
+        Source job = source;
+        return (job == null) ? 0L : job.getErrorsCount();
+    }
+
+    @Override
+    public synchronized long getCurrentBytesPerSecond() {
+
+        long bytes = getBytesCopied();
+        long now = System.currentTimeMillis();
+        long millis = Math.max(now - lastReadingTime, 1L);
+        long rate = (bytes - lastBytesCopied) * 1000L / millis;
+        lastBytesCopied = bytes;
+        lastReadingTime = now;
+        return Math.max(rate, 0L);
+    }
+
+    @Override
+    public long getAverageBytesPerSecond() {
+
+        return getBytesCopied() * 1000L / Math.max(getElapsedMillis(), 1L);
+    }
+
+    @Override
+    public int getFilesFound() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getFoundFilesCount();
+    }
+
+    @Override
+    public boolean isScanCompleted() {
+
+        Source job = source;
+        return (job != null) && job.isWalkCompleted();
+    }
+
+    @Override
+    public int getQueuedFiles() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getQueuedFilesCount();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getActiveWorkersCount();
+    }
+
+    @Override
+    public int getArchiveQueuedFiles() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getArchiveQueuedFilesCount();
+    }
+
+    @Override
+    public int getFilesArchived() {
+
+        Source job = source;
+        return (job == null) ? 0 : job.getArchivedFilesCount();
+    }
+
+    @Override
+    public long getElapsedMillis() {
+
+        Source job = source;
+        return (job == null) ? 0L : job.getRunningMillis();
+    }
+}
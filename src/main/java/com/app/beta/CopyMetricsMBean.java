@@ -0,0 +1,56 @@
+package com.app.beta;
+
+
+/*
+ * The management interface of CopyMetrics, with the attributes seen in
+ * a JMX console such as JConsole.
+ */
+public interface CopyMetricsMBean {
+
+
+    String getPhase();
+
+    long getBytesCopied();
+
+    long getBytesWritten();
+
+    int getFilesCopied();
+
+    int getFilesSkipped();
+
+    int getFilesResumed();
+
+    int getDirectoriesCopied();
+
+    long getErrors();
+
+    /*
+     * The bytes copied per second since the previous reading of this
+     * attribute, or since the copy started.
+     */
+    long getCurrentBytesPerSecond();
+
+    /*
+     * The bytes copied per second since the copy started.
+     */
+    long getAverageBytesPerSecond();
+
+    /*
+     * The stages of the copy: the files found by the walk so far, and if
+     * the walk is completed; the files waiting for a worker; the workers
+     * copying; the copied files waiting to be archived, and archived.
+     */
+    int getFilesFound();
+
+    boolean isScanCompleted();
+
+    int getQueuedFiles();
+
+    int getActiveWorkers();
+
+    int getArchiveQueuedFiles();
+
+    int getFilesArchived();
+
+    long getElapsedMillis();
+}
@@ -0,0 +1,20 @@
+package com.app.beta;
+
+
+/*
+ * Enum class represents the phases of a copy job, as reported by
+ * CopyMetrics.
+ */
+public enum CopyPhase {
+
+    IDLE,
+    FILTERING,
+    COPYING,
+    MOVING,
+    PAUSED,
+    VERIFYING,
+    ZIPPING,
+    COMPLETED,
+    CANCELLED,
+    FAILED
+}
@@ -0,0 +1,27 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+
+/*
+ * A way of copying one source file to its target file. The copy engine
+ * picks a strategy per file; see CopyEngine. The target file is created,
+ * or replaced if it exists. A strategy reports the bytes it has copied
+ * through the context and checks it to stop between chunks.
+ */
+public interface CopyStrategy {
+
+
+    /*
+     * Copies the source file to the target file. Returns true if the file
+     * is copied completely, or false if the copy was stopped part way
+     * through; in that case the partially copied target is deleted.
+     */
+    boolean copy(Path source,
+                 Path target,
+                 BasicFileAttributes attrs,
+                 CopyContext context)
+            throws IOException;
+}
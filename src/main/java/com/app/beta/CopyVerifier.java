@@ -0,0 +1,191 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+
+/*
+ * Verifies a target directory against its checksums manifest, which the
+ * copy engine writes when it copies with a checksum algorithm; see
+ * CopyManifest. The target files are read again and their checksums
+ * computed, in parallel, by worker threads or virtual threads as in a
+ * copy, within the target file store's limit; see StoreLimits.
+ */
+public class CopyVerifier {
+
+
+    private final Path targetDir;
+
+    // Number of worker threads reading the files.
+    private int workers = CopyEngine.DEFAULT_WORKERS;
+
+    // Verify each file with a virtual thread, instead of the worker threads.
+    private boolean virtualThreads;
+
+    private final AtomicInteger verifiedFilesCount = new AtomicInteger();
+
+
+    public CopyVerifier(Path targetDir) {
+
+        this.targetDir = targetDir;
+    }
+
+    /*
+     * A verifier of the engine's target directory, with the engine's
+     * workers and virtual thread mode.
+     */
+    public static CopyVerifier of(CopyEngine engine) {
+
+        CopyVerifier verifier = new CopyVerifier(engine.getTargetDir());
+        verifier.setWorkers(engine.getWorkers());
+        verifier.setVirtualThreads(engine.getVirtualThreads());
+        return verifier;
+    }
+
+    public void setWorkers(int n) {
+
+        workers = Math.max(1, Math.min(n, CopyEngine.MAX_WORKERS));
+    }
+
+    /*
+     * The virtual thread mode is set only if it is supported; see
+     * VirtualThreads.isSupported().
+     */
+    public void setVirtualThreads(boolean b) {
+
+        virtualThreads = b && VirtualThreads.isSupported();
+    }
+
+    public Path getManifestFile() {
+
+        return CopyManifest.getManifestFile(targetDir);
+    }
+
+    public int getVerifiedFilesCount() {
+
+        return verifiedFilesCount.get();
+    }
+
+    /*
+     * Returns the mismatches of the target files with the manifest, one
+     * line per file, sorted; empty if all the files in the manifest match.
+     * Once isCancelled returns true no new files are verified.
+     */
+    public List<String> verify(BooleanSupplier isCancelled)
+            throws IOException, InterruptedException {
+
+        Path manifestFile = getManifestFile();
+        ChecksumAlgorithm algorithm = CopyManifest.readAlgorithm(manifestFile);
+
+        if (algorithm == null) {
+
+            throw new IOException("No checksum manifest: " + manifestFile);
+        }
+
+        Map<String, CopyManifest.Entry> entries = CopyManifest.read(manifestFile);
+        verifiedFilesCount.set(0);
+        int concurrency = StoreLimits.min(
+                virtualThreads ? VirtualThreads.MAX_OPEN_FILES : workers,
+                StoreLimits.getConcurrency(Files.getFileStore(targetDir)));
+        ExecutorService executor = virtualThreads ?
+                VirtualThreads.newExecutor() :
+                WorkerPools.newWorkerPool("verify-worker-", concurrency,
+                        concurrency * CopyEngine.QUEUED_FILES_PER_WORKER, isCancelled);
+        Semaphore openFiles = virtualThreads ? new Semaphore(concurrency) : null;
+        Queue<String> mismatches = new ConcurrentLinkedQueue<>();
+
+        try {
+            for (Map.Entry<String, CopyManifest.Entry> e : entries.entrySet()) {
+
+                if (isCancelled.getAsBoolean()) {
+
+                    break;
+                }
+
+                boolean submitted = WorkerPools.execute(executor, openFiles, () -> {
+
+                    String mismatch =
+                            verifyFile(e.getKey(), e.getValue(), algorithm, isCancelled);
+
+                    if (mismatch != null) {
+
+                        mismatches.add(mismatch);
+                    }
+                });
+
+                if (! submitted) {
+
+                    break;
+                }
+            }
+        }
+        finally {
+            WorkerPools.awaitWorkers(executor, isCancelled);
+        }
+
+        List<String> result = new ArrayList<>(mismatches);
+        result.sort(null);
+        return result;
+    }
+
+    /*
+     * Returns the mismatch of the target file with its manifest entry, or
+     * null if it matches or the verify is cancelled.
+     */
+    private String verifyFile(String relativePath,
+                              CopyManifest.Entry entry,
+                              ChecksumAlgorithm algorithm,
+                              BooleanSupplier isCancelled) {
+
+        Path target = targetDir.resolve(relativePath);
+
+        try {
+            long size = Files.size(target);
+
+            if (size != entry.size) {
+
+                return relativePath + ": size [" + size + "], expected [" + entry.size + "]";
+            }
+
+            FileDigest digest = new FileDigest(algorithm);
+            ByteBuffer buffer = ByteBuffer.allocate(
+                    (int) Math.max(1L, Math.min(size, ChecksumCopyStrategy.BUFFER_SIZE)));
+
+            if (! digest.update(target, size, buffer, isCancelled)) {
+
+                return null;
+            }
+
+            verifiedFilesCount.incrementAndGet();
+            String checksum = digest.getValue();
+
+            if (! checksum.equals(entry.checksum)) {
+
+                return relativePath + ": checksum [" + checksum + "], " +
+                        "expected [" + entry.checksum + "]";
+            }
+
+            return null;
+        }
+        catch (NoSuchFileException e) {
+
+            return relativePath + ": missing";
+        }
+        catch (IOException e) {
+
+            return relativePath + ": " + e;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Updates an existing target file in place, rewriting only the blocks that
+ * differ from the source. The source and the target are read block by block
+ * at the same offsets; a block that differs is written at its position in
+ * the target, and the target is truncated to the source size at the end.
+ * This is used for large files that change a little between copies, such
+ * as log archives and database dumps. The bytes actually written are
+ * reported to the context, next to the bytes copied. The position compared
+ * up to is recorded after each chunk; a stopped update continues from it,
+ * and when the copy is resumable the partially updated target is kept.
+ */
+public class DeltaCopyStrategy implements CopyStrategy {
+
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        boolean completed = true;
+        long position = context.getResumePosition(source, attrs);
+
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = FileChannel.open(target, READ, WRITE)) {
+
+            ByteBuffer sourceBlock = ByteBuffer.allocate(BLOCK_SIZE);
+            ByteBuffer targetBlock = ByteBuffer.allocate(BLOCK_SIZE);
+            long size = in.size();
+            long chunkCopied = 0;
+            long chunkWritten = 0;
+
+            while (position < size) {
+
+                int sourceCount = read(in, sourceBlock, position);
+
+                if (sourceCount == 0) {
+
+                    break; // the source was truncated after it was opened
+                }
+
+                read(out, targetBlock, position);
+
+                if (! sourceBlock.equals(targetBlock)) {
+
+                    while (sourceBlock.hasRemaining()) {
+
+                        out.write(sourceBlock, position + sourceBlock.position());
+                    }
+
+                    chunkWritten += sourceCount;
+                }
+
+                position += sourceCount;
+                chunkCopied += sourceCount;
+
+                if (chunkCopied >= context.getChunkSize()) {
+
+                    context.bytesCopied(chunkCopied, chunkWritten);
+                    context.positionReached(source, attrs, position);
+                    chunkCopied = 0;
+                    chunkWritten = 0;
+
+                    if (context.isStopped()) {
+
+                        completed = false;
+                        break;
+                    }
+                }
+            }
+
+            if (completed) {
+
+                context.bytesCopied(chunkCopied, chunkWritten);
+                out.truncate(position);
+            }
+        }
+
+        if ((! completed) && (! context.isResumable())) {
+
+            Files.deleteIfExists(target);
+        }
+
+        return completed;
+    }
+
+    /*
+     * Reads up to one block at the position into the cleared buffer, and
+     * flips it. Returns the count of bytes read; this is less than a block
+     * at the end of the file.
+     */
+    private static int read(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+
+        buffer.clear();
+
+        while (buffer.hasRemaining()) {
+
+            int n = channel.read(buffer, position + buffer.position());
+
+            if (n < 0) {
+
+                break;
+            }
+        }
+
+        buffer.flip();
+        return buffer.limit();
+    }
+}
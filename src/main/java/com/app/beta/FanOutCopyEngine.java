@@ -0,0 +1,691 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Copies the filtered source files to several target directories at once,
+ * for example to a local backup and to a USB disk. The source tree is
+ * walked once, as by the CopyEngine, and each block of a source file is
+ * read once into a buffer and written from it to all the targets in
+ * parallel; so the source is read once however many targets there are.
+ * A target which fails, for example a disk which is full or removed, is
+ * dropped from the copy and its error kept; the copy continues to the
+ * other targets. The progress and the counts are kept per target.
+ * The options of the CopyEngine (sync, delta, journal and such) are not
+ * supported; the files are copied whole and replace existing targets.
+ * The counts of the copy, on the source side, are read by the CopyMetrics
+ * MBean.
+ */
+public class FanOutCopyEngine implements CopyMetrics.Source {
+
+
+    private final Path sourceDir;
+    private final List<Target> targets = new ArrayList<>();
+
+    // Number of worker threads copying the files; as in CopyEngine.
+    private int workers = CopyEngine.DEFAULT_WORKERS;
+
+    // Files copied at the same time by the last copy, within the limits
+    // of the source and all the target file stores.
+    private int concurrency;
+
+    // Notified with the work done so far on the source side: the count of
+    // the directories and files plus the bytes read. See getTotalWork().
+    private LongConsumer progressListener = done -> {};
+    private final AtomicLong workDone = new AtomicLong();
+    private final LongAdder readBytesCount = new LongAdder();
+
+    // Counts on the source side: the files copied to at least one target,
+    // the directories, the files which failed to read, and the files found
+    // by the walk so far; and whether the walk is completed.
+    private final LongAdder copiedFilesCount = new LongAdder();
+    private final AtomicInteger copiedDirsCount = new AtomicInteger();
+    private final LongAdder errorsCount = new LongAdder();
+    private final AtomicInteger foundFilesCount = new AtomicInteger();
+    private volatile boolean walkCompleted;
+
+    // The running copy's executor, for the metrics.
+    private volatile ThreadPoolExecutor runningExecutor;
+    private volatile long startTime;
+
+    // Time taken by the last copy.
+    private long elapsedMillis;
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    // Files waiting for a worker, per worker; as in CopyEngine. When the
+    // queue is full the walking thread waits, which throttles the walk.
+    private static final int QUEUED_FILES_PER_WORKER = 256;
+
+    // A read buffer per worker thread.
+    private final ThreadLocal<ByteBuffer> buffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+
+    /*
+     * A target directory of the copy, with its own counts and error. Once
+     * it has an error, nothing more is copied to the target.
+     */
+    public static class Target {
+
+        private final Path dir;
+        private final LongAdder copiedFilesCount = new LongAdder();
+        private final LongAdder copiedDirsCount = new LongAdder();
+        private final LongAdder writtenBytesCount = new LongAdder();
+        private final AtomicLong workDone = new AtomicLong();
+        private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+        Target(Path dir) {
+
+            this.dir = dir;
+        }
+
+        public Path getDir() {
+
+            return dir;
+        }
+
+        public int getCopiedFilesCount() {
+
+            return copiedFilesCount.intValue();
+        }
+
+        public int getCopiedDirsCount() {
+
+            return copiedDirsCount.intValue();
+        }
+
+        public long getWrittenBytesCount() {
+
+            return writtenBytesCount.sum();
+        }
+
+        /*
+         * The work done for this target, as counted by getTotalWork().
+         */
+        public long getWorkDone() {
+
+            return workDone.get();
+        }
+
+        /*
+         * The error which dropped the target from the copy, or null.
+         */
+        public IOException getFailure() {
+
+            return failure.get();
+        }
+
+        boolean isFailed() {
+
+            return failure.get() != null;
+        }
+
+        void fail(IOException e) {
+
+            failure.compareAndSet(null, e);
+        }
+
+        void reset() {
+
+            copiedFilesCount.reset();
+            copiedDirsCount.reset();
+            writtenBytesCount.reset();
+            workDone.set(0);
+            failure.set(null);
+        }
+    }
+
+    public FanOutCopyEngine(Path sourceDir, List<Path> targetDirs) {
+
+        this.sourceDir = sourceDir;
+
+        for (Path dir : targetDirs) {
+
+            targets.add(new Target(dir));
+        }
+    }
+
+    public void setWorkers(int n) {
+
+        workers = Math.max(1, Math.min(n, CopyEngine.MAX_WORKERS));
+    }
+    public int getWorkers() {
+
+        return workers;
+    }
+
+    public void setProgressListener(LongConsumer listener) {
+
+        progressListener = listener;
+    }
+
+    public List<Target> getTargets() {
+
+        return Collections.unmodifiableList(targets);
+    }
+
+    public long getReadBytesCount() {
+
+        return readBytesCount.sum();
+    }
+
+    public int getConcurrency() {
+
+        return concurrency;
+    }
+
+    public long getElapsedMillis() {
+
+        return elapsedMillis;
+    }
+
+    @Override
+    public long getCopiedBytesCount() {
+
+        return readBytesCount.sum();
+    }
+
+    /*
+     * The bytes written to all the targets.
+     */
+    @Override
+    public long getWrittenBytesCount() {
+
+        long written = 0;
+
+        for (Target t : targets) {
+
+            written += t.getWrittenBytesCount();
+        }
+
+        return written;
+    }
+
+    @Override
+    public int getCopiedFilesCount() {
+
+        return copiedFilesCount.intValue();
+    }
+
+    @Override
+    public int getCopiedDirsCount() {
+
+        return copiedDirsCount.get();
+    }
+
+    /*
+     * The files which failed to read, plus the targets dropped.
+     */
+    @Override
+    public long getErrorsCount() {
+
+        return errorsCount.sum() + (targets.size() - getLiveTargets().size());
+    }
+
+    @Override
+    public int getFoundFilesCount() {
+
+        return foundFilesCount.get();
+    }
+
+    @Override
+    public boolean isWalkCompleted() {
+
+        return walkCompleted;
+    }
+
+    @Override
+    public int getQueuedFilesCount() {
+
+        ThreadPoolExecutor executor = runningExecutor;
+
+        return (executor == null) ? 0 : executor.getQueue().size();
+    }
+
+    @Override
+    public int getActiveWorkersCount() {
+
+        ThreadPoolExecutor executor = runningExecutor;
+
+        return (executor == null) ? 0 : executor.getActiveCount();
+    }
+
+    @Override
+    public long getRunningMillis() {
+
+        return (runningExecutor != null) ?
+                (System.currentTimeMillis() - startTime) : elapsedMillis;
+    }
+
+    /*
+     * The total work per target, and on the source side; as in CopyEngine.
+     */
+    public static long getTotalWork(int dirsCount, int filesCount, long bytesCount) {
+
+        return CopyEngine.getTotalWork(dirsCount, filesCount, bytesCount);
+    }
+
+    /*
+     * Copies the filtered files and directories from the source to all
+     * the target directories. The isCancelled supplier is checked before
+     * each directory and file, and after each block. An error reading the
+     * source stops the copy and is thrown; an error writing to a target
+     * drops the target, and only if all the targets are dropped is the
+     * first of their errors thrown. The errors of the targets are found
+     * with Target.getFailure().
+     */
+    public void copy(Set<Path> filteredFiles, BooleanSupplier isCancelled)
+            throws IOException, InterruptedException {
+
+        for (Target t : targets) {
+
+            t.reset();
+        }
+
+        workDone.set(0);
+        readBytesCount.reset();
+        copiedFilesCount.reset();
+        copiedDirsCount.set(0);
+        errorsCount.reset();
+        foundFilesCount.set(0);
+        walkCompleted = false;
+        startTime = System.currentTimeMillis();
+        int storeLimit = StoreLimits.getConcurrency(Files.getFileStore(sourceDir));
+
+        for (Target t : targets) {
+
+            Files.createDirectories(t.dir);
+            storeLimit = StoreLimits.min(storeLimit,
+                    StoreLimits.getConcurrency(Files.getFileStore(t.dir)));
+        }
+
+        concurrency = StoreLimits.min(workers, storeLimit);
+
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        BooleanSupplier isStopped = () -> isCancelled.getAsBoolean() ||
+                (failure.get() != null) || getLiveTargets().isEmpty();
+
+        ThreadPoolExecutor executor = WorkerPools.newWorkerPool("copy-worker-", concurrency,
+                concurrency * QUEUED_FILES_PER_WORKER, isStopped);
+
+        // A worker waits for its writes, so the writers' queue never fills
+        int writerThreads = concurrency * targets.size();
+        ExecutorService writers = WorkerPools.newWorkerPool("copy-writer-", writerThreads,
+                writerThreads, () -> false);
+        runningExecutor = executor;
+
+        try {
+            Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+
+                /*
+                 * Create the directories in all the targets.
+                 */
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir,
+                                                         BasicFileAttributes attrs) {
+
+                    if (isStopped.getAsBoolean()) {
+
+                        return FileVisitResult.TERMINATE;
+                    }
+
+                    if (! filteredFiles.contains(dir)) {
+
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    for (Target t : getLiveTargets()) {
+
+                        createDirectory(t, dir);
+                    }
+
+                    if (! dir.equals(sourceDir)) {
+
+                        copiedDirsCount.incrementAndGet();
+                        progressListener.accept(workDone.incrementAndGet());
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs) {
+
+                    if (isStopped.getAsBoolean()) {
+
+                        return FileVisitResult.TERMINATE;
+                    }
+
+                    if (filteredFiles.contains(file)) {
+
+                        foundFilesCount.incrementAndGet();
+                        boolean submitted = WorkerPools.execute(executor, null, () -> {
+
+                            if (isStopped.getAsBoolean()) {
+
+                                return;
+                            }
+
+                            try {
+                                copyFile(file, writers, isStopped);
+                            }
+                            catch (IOException e) {
+
+                                errorsCount.increment();
+                                failure.compareAndSet(null, e);
+                            }
+                        });
+
+                        if (! submitted) {
+
+                            return FileVisitResult.TERMINATE;
+                        }
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            walkCompleted = ! isStopped.getAsBoolean();
+        }
+        finally {
+            try {
+                WorkerPools.awaitWorkers(executor, isStopped);
+            }
+            finally {
+                writers.shutdownNow();
+                elapsedMillis = System.currentTimeMillis() - startTime;
+                runningExecutor = null;
+            }
+        }
+
+        if (isCancelled.getAsBoolean()) {
+
+            return;
+        }
+
+        if (failure.get() != null) {
+
+            throw failure.get();
+        }
+
+        if (getLiveTargets().isEmpty() && (! targets.isEmpty())) {
+
+            throw targets.get(0).getFailure();
+        }
+    }
+
+    private List<Target> getLiveTargets() {
+
+        List<Target> live = new ArrayList<>();
+
+        for (Target t : targets) {
+
+            if (! t.isFailed()) {
+
+                live.add(t);
+            }
+        }
+
+        return live;
+    }
+
+    private void createDirectory(Target t, Path dir) {
+
+        Path target = t.dir.resolve(sourceDir.relativize(dir));
+
+        try {
+            Files.copy(dir, target);
+            t.copiedDirsCount.increment();
+        }
+        catch (FileAlreadyExistsException e) {
+
+            if (! Files.isDirectory(target)) {
+
+                t.fail(e);
+                return;
+            }
+        }
+        catch (IOException e) {
+
+            t.fail(e);
+            return;
+        }
+
+        if (! dir.equals(sourceDir)) {
+
+            t.workDone.incrementAndGet();
+        }
+    }
+
+    /*
+     * Copies the file to the live targets: each block is read once, then
+     * written to all the targets in parallel; the first target's write is
+     * done by this worker, and the others' by the writer threads. A target
+     * whose open or write fails is dropped, and its partially written file
+     * deleted. Throws the error of reading the source. When the copy is
+     * stopped, or the read fails, part way through the file, the partially
+     * copied targets are deleted.
+     */
+    private void copyFile(Path file, ExecutorService writers, BooleanSupplier isStopped)
+            throws IOException {
+
+        Path relativePath = sourceDir.relativize(file);
+        List<Target> fileTargets = new ArrayList<>();
+        List<FileChannel> outs = new ArrayList<>();
+        boolean completed = true;
+        IOException readFailure = null;
+
+        try (FileChannel in = FileChannel.open(file, READ)) {
+
+            for (Target t : getLiveTargets()) {
+
+                try {
+                    outs.add(FileChannel.open(t.dir.resolve(relativePath),
+                            CREATE, WRITE, TRUNCATE_EXISTING));
+                    fileTargets.add(t);
+                }
+                catch (IOException e) {
+
+                    t.fail(e);
+                }
+            }
+
+            ByteBuffer buffer = buffers.get();
+            long position = 0;
+
+            while (! fileTargets.isEmpty()) {
+
+                if (isStopped.getAsBoolean()) {
+
+                    completed = false;
+                    break;
+                }
+
+                buffer.clear();
+                int count = in.read(buffer, position);
+
+                if (count < 0) {
+
+                    break;
+                }
+
+                buffer.flip();
+                writeAll(fileTargets, outs, relativePath, buffer, position, writers);
+                position += count;
+                readBytesCount.add(count);
+                progressListener.accept(workDone.addAndGet(count));
+            }
+        }
+        catch (IOException e) {
+
+            readFailure = e;
+            completed = false;
+        }
+        finally {
+            for (FileChannel out : outs) {
+
+                closeQuietly(out);
+            }
+        }
+
+        boolean copied = false;
+
+        for (Target t : fileTargets) {
+
+            if (! completed) {
+
+                deleteQuietly(t.dir.resolve(relativePath));
+            }
+            else if (! t.isFailed()) {
+
+                t.copiedFilesCount.increment();
+                t.workDone.incrementAndGet();
+                copied = true;
+            }
+        }
+
+        if (readFailure != null) {
+
+            throw readFailure;
+        }
+
+        if (copied) {
+
+            copiedFilesCount.increment();
+        }
+
+        if (completed) {
+
+            progressListener.accept(workDone.incrementAndGet());
+        }
+    }
+
+    /*
+     * Writes the buffer at the position to the targets' channels, each
+     * through its own view of the buffer. The targets whose write fails
+     * are failed, and removed with their channels from the lists; their
+     * partially written file is deleted.
+     */
+    private static void writeAll(List<Target> fileTargets,
+                                 List<FileChannel> outs,
+                                 Path relativePath,
+                                 ByteBuffer buffer,
+                                 long position,
+                                 ExecutorService writers)
+            throws IOException {
+
+        List<Future<?>> writes = new ArrayList<>();
+
+        for (int i = 1; i < outs.size(); i++) {
+
+            FileChannel out = outs.get(i);
+            writes.add(writers.submit(() -> {
+
+                write(out, buffer.duplicate(), position);
+                return null;
+            }));
+        }
+
+        IOException[] errors = new IOException[outs.size()];
+
+        try {
+            write(outs.get(0), buffer.duplicate(), position);
+        }
+        catch (IOException e) {
+
+            errors[0] = e;
+        }
+
+        for (int i = 1; i < outs.size(); i++) {
+
+            try {
+                writes.get(i - 1).get();
+            }
+            catch (ExecutionException e) {
+
+                errors[i] = (e.getCause() instanceof IOException) ?
+                        (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Copy interrupted: " + e.getMessage());
+            }
+        }
+
+        for (int i = outs.size() - 1; i >= 0; i--) {
+
+            Target t = fileTargets.get(i);
+
+            if (errors[i] != null) {
+
+                t.fail(errors[i]);
+            }
+            else {
+                t.writtenBytesCount.add(buffer.remaining());
+                t.workDone.addAndGet(buffer.remaining());
+            }
+
+            if (t.isFailed()) {
+
+                // failed now, or by another worker
+                closeQuietly(outs.remove(i));
+                fileTargets.remove(i);
+                deleteQuietly(t.dir.resolve(relativePath));
+            }
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer, long position)
+            throws IOException {
+
+        while (buffer.hasRemaining()) {
+
+            out.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+
+            // the target is failed already, for example removed
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+
+            // the target is failed already, or its writes completed
+        }
+    }
+}
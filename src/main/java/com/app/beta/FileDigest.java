@@ -0,0 +1,120 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+
+/*
+ * The checksum of a file's bytes, computed as the bytes are read; with
+ * either a CRC32C or a MessageDigest for the algorithm. The value is a
+ * hex string. An instance is not thread safe: each copy worker has its
+ * own, so hashing does not make the workers wait for each other.
+ */
+public class FileDigest {
+
+
+    private final CRC32C crc;
+    private final MessageDigest messageDigest;
+
+
+    public FileDigest(ChecksumAlgorithm algorithm) {
+
+        if (algorithm == ChecksumAlgorithm.CRC32C) {
+
+            crc = new CRC32C();
+            messageDigest = null;
+        }
+        else {
+            crc = null;
+
+            try {
+                messageDigest = MessageDigest.getInstance(algorithm.toString());
+            }
+            catch (NoSuchAlgorithmException e) {
+
+                // Every Java platform has SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /*
+     * Adds the remaining bytes of the buffer. The buffer's position is not
+     * changed, so the same bytes can be written next.
+     */
+    public void update(ByteBuffer buffer) {
+
+        if (crc != null) {
+
+            crc.update(buffer.duplicate());
+        }
+        else {
+            messageDigest.update(buffer.duplicate());
+        }
+    }
+
+    /*
+     * Returns the checksum of the bytes added. A SHA-256 digest is reset
+     * by this; the value is got once, when all the bytes are added.
+     */
+    public String getValue() {
+
+        if (crc != null) {
+
+            return String.format("%08x", crc.getValue());
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for (byte b : messageDigest.digest()) {
+
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    /*
+     * Adds the bytes of the file up to the size, or up to the end of a
+     * shorter file, read through the buffer. Returns false if stopped.
+     */
+    public boolean update(Path file, long size, ByteBuffer buffer, BooleanSupplier isStopped)
+            throws IOException {
+
+        try (FileChannel in = FileChannel.open(file, READ)) {
+
+            long position = 0;
+
+            while (position < size) {
+
+                if (isStopped.getAsBoolean()) {
+
+                    return false;
+                }
+
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                int count = in.read(buffer, position);
+
+                if (count < 0) {
+
+                    break;
+                }
+
+                buffer.flip();
+                update(buffer);
+                position += count;
+            }
+        }
+
+        return true;
+    }
+}
@@ -1,16 +1,30 @@
 package com.app.beta;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 
 /*
@@ -18,47 +32,149 @@ import java.util.Set;
  * Path objects after the file filters are applied. Additionally,
  * any empty directories are removed from the filtered collection.
  * The input is the selected files, source directory and the
- * file filters.
+ * file filters. The counts of the filtered directories and files,
+ * and the total size of the files, are collected as the filters
+ * are applied.
+ * In the virtual thread mode, on JDK 21 and later, each directory is
+ * scanned by its own virtual thread, and the directories with filtered
+ * files are found from the files' parents after the scan; see
+ * VirtualThreads.
+ * The directories whose every file and subdirectory passed the filters
+ * are also collected; they can be moved whole, see FileMover.
  */
 public class FileFilterApplication {
 
 
+    // Counts of the filtered directories (except the source directory),
+    // files and bytes, after apply().
+    private int dirsCount;
+    private int filesCount;
+    private long bytesCount;
+
+    // The filtered directories with all of their contents filtered, after
+    // apply(); the source directory is one, if no file was filtered out.
+    private Set<Path> completeDirs = new PathTrieSet();
+
+    // Scan each directory with a virtual thread.
+    private boolean virtualThreads;
+
+
     public FileFilterApplication() {
     }
 
+    /*
+     * The virtual thread mode is set only if it is supported; see
+     * VirtualThreads.isSupported().
+     */
+    public void setVirtualThreads(boolean b) {
+
+        virtualThreads = b && VirtualThreads.isSupported();
+    }
+    public boolean getVirtualThreads() {
+
+        return virtualThreads;
+    }
+
+    public int getDirsCount() {
+
+        return dirsCount;
+    }
+
+    public int getFilesCount() {
+
+        return filesCount;
+    }
+
+    public long getBytesCount() {
+
+        return bytesCount;
+    }
+
+    public Set<Path> getCompleteDirs() {
+
+        return completeDirs;
+    }
+
     public Set<Path> apply(Path sourceDir,
                            Set<Path> selectedFiles,
                            FileFilters filters)
             throws IOException {
 
-        Set<Path> filteredFiles = new HashSet<>();
+        return apply(sourceDir, selectedFiles::contains, filters);
+    }
+
+    /*
+     * Applies the file filters to all the files in the source directory;
+     * used when there is no selection, from the command line.
+     */
+    public Set<Path> apply(Path sourceDir,
+                           FileFilters filters)
+            throws IOException {
+
+        return apply(sourceDir, p -> true, filters);
+    }
+
+    private Set<Path> apply(Path sourceDir,
+                            Predicate<Path> isSelected,
+                            FileFilters filters)
+            throws IOException {
+
+        if (virtualThreads) {
+
+            return applyConcurrently(sourceDir, isSelected, filters);
+        }
+
+        Set<Path> filteredFiles = new PathTrieSet();
+        dirsCount = 0;
+        filesCount = 0;
+        bytesCount = 0;
+        completeDirs = new PathTrieSet();
+
+        // The state of each directory being visited, the innermost first;
+        // a directory's filtered files and subdirectories are counted as
+        // they are visited, so there is no search for its files after.
+        Deque<DirState> dirStack = new ArrayDeque<>();
 
         Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
 
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
 
-                if (! selectedFiles.contains(dir)) {
+                if (! isSelected.test(dir)) {
 
                     // Not a selected directory, skip it
+                    setIncomplete();
                     return FileVisitResult.SKIP_SUBTREE;
                 }
 
+                dirStack.push(new DirState());
                 return FileVisitResult.CONTINUE;
             }
 
+            private void setIncomplete() {
+
+                if (! dirStack.isEmpty()) {
+
+                    dirStack.peek().complete = false;
+                }
+            }
+
             @Override
             public FileVisitResult visitFile(Path file,
                                              BasicFileAttributes attrs)
                     throws IOException {
 
-                if (selectedFiles.contains(file) &&
-                        applyFileTypeFilter(filters, file) &&
-                        applyDateOptionFilter(filters, file))  {
+                if (isSelected.test(file) && accept(filters, file, attrs))  {
 
                     // Add selected files that match the
                     // file filter criteria
                     filteredFiles.add(file);
+                    filesCount++;
+                    bytesCount += attrs.size();
+                    dirStack.peek().filteredCount++;
+                }
+                else {
+                    setIncomplete();
                 }
 
                 return FileVisitResult.CONTINUE;
@@ -67,10 +183,36 @@ public class FileFilterApplication {
             @Override
             public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
 
-                if (dirHasFiles(dir, filteredFiles)) {
+                DirState state = dirStack.pop();
+                boolean complete = state.complete && (exc == null);
 
-                    // Add directories with files in it
+                if (state.filteredCount > 0) {
+
+                    // Add directories with files in it, which
+                    // counts for the parent directory too
                     filteredFiles.add(dir);
+
+                    if (complete) {
+
+                        completeDirs.add(dir);
+                    }
+
+                    if (! dir.equals(sourceDir)) {
+
+                        dirsCount++;
+                    }
+
+                    if (! dirStack.isEmpty()) {
+
+                        dirStack.peek().filteredCount++;
+                    }
+                }
+
+                if (! completeDirs.contains(dir)) {
+
+                    // An empty directory, which is not filtered, also
+                    // makes its parent incomplete
+                    setIncomplete();
                 }
 
                 return FileVisitResult.CONTINUE;
@@ -81,44 +223,215 @@ public class FileFilterApplication {
     }
 
     /*
-     * Check if the input dir has any files in it that are already
-     * filtered. Note this check is not on the file system.
+     * Applies the filters as apply() does, with a virtual thread per
+     * directory. A directory's thread lists the directory, filters its
+     * files, and starts the threads of its subdirectories, then waits for
+     * them. The open directories are limited to MAX_OPEN_FILES. The first
+     * error in any directory is thrown.
+     */
+    private Set<Path> applyConcurrently(Path sourceDir,
+                                        Predicate<Path> isSelected,
+                                        FileFilters filters)
+            throws IOException {
+
+        Set<Path> filteredFiles = ConcurrentHashMap.newKeySet();
+        Set<Path> complete = ConcurrentHashMap.newKeySet();
+        AtomicInteger files = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        Semaphore openDirs = new Semaphore(VirtualThreads.MAX_OPEN_FILES);
+        ExecutorService executor = VirtualThreads.newExecutor();
+
+        try {
+            if (isSelected.test(sourceDir)) {
+
+                scanDirectory(sourceDir, isSelected, filters, filteredFiles,
+                        complete, files, bytes, openDirs, executor);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // The directories with filtered files are the files' ancestors
+        Set<Path> dirs = new PathTrieSet();
+
+        for (Path file : filteredFiles) {
+
+            for (Path dir = file.getParent();
+                 (dir != null) && dir.startsWith(sourceDir) && dirs.add(dir);
+                 dir = dir.getParent()) {
+            }
+        }
+
+        // The scan's concurrent sets are copied to path tries, which keep
+        // the results in much less memory
+        Set<Path> result = new PathTrieSet(filteredFiles);
+        result.addAll(dirs);
+        completeDirs = new PathTrieSet(complete);
+        filesCount = files.get();
+        bytesCount = bytes.get();
+        dirsCount = dirs.size() - (dirs.contains(sourceDir) ? 1 : 0);
+        return result;
+    }
+
+    /*
+     * Scans the directory and its subdirectories. Returns true, and adds
+     * the directory to the complete directories, if all of its contents
+     * passed the filters and it has a filtered file.
      */
-    private boolean dirHasFiles(Path inDir, Set<Path> list) {
+    private boolean scanDirectory(Path dir,
+                                  Predicate<Path> isSelected,
+                                  FileFilters filters,
+                                  Set<Path> filteredFiles,
+                                  Set<Path> completeDirs,
+                                  AtomicInteger files,
+                                  AtomicLong bytes,
+                                  Semaphore openDirs,
+                                  ExecutorService executor)
+            throws IOException {
+
+        List<Path> subdirs = new ArrayList<>();
+        boolean complete = true;
+        boolean hasFiles = false;
+
+        try {
+            openDirs.acquire();
+        }
+        catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan interrupted: " + e.getMessage());
+        }
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+
+            for (Path entry : entries) {
+
+                BasicFileAttributes attrs = Files.readAttributes(entry,
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                if (attrs.isDirectory()) {
 
-        return list
-                .stream()
-                .anyMatch(p -> ((!p.equals(inDir)) && p.startsWith(inDir)));
+                    if (isSelected.test(entry)) {
+
+                        subdirs.add(entry);
+                    }
+                    else {
+                        complete = false;
+                    }
+                }
+                else if (isSelected.test(entry) && accept(filters, entry, attrs)) {
+
+                    filteredFiles.add(entry);
+                    files.incrementAndGet();
+                    bytes.addAndGet(attrs.size());
+                    hasFiles = true;
+                }
+                else {
+                    complete = false;
+                }
+            }
+        }
+        finally {
+            openDirs.release();
+        }
+
+        List<Future<Boolean>> scans = new ArrayList<>();
+
+        for (Path subdir : subdirs) {
+
+            scans.add(executor.submit(() ->
+                    scanDirectory(subdir, isSelected, filters, filteredFiles,
+                            completeDirs, files, bytes, openDirs, executor)));
+        }
+
+        for (Future<Boolean> scan : scans) {
+
+            try {
+                if (scan.get()) {
+
+                    hasFiles = true;
+                }
+                else {
+                    complete = false;
+                }
+            }
+            catch (ExecutionException e) {
+
+                if (e.getCause() instanceof IOException) {
+
+                    throw (IOException) e.getCause();
+                }
+
+                throw new IOException(e.getCause());
+            }
+            catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Scan interrupted: " + e.getMessage());
+            }
+        }
+
+        if (complete && hasFiles) {
+
+            completeDirs.add(dir);
+            return true;
+        }
+
+        return false;
+    }
+
+    /*
+     * The state of a directory during the walk: the count of its filtered
+     * files and subdirectories, i.e. the subdirectories with filtered
+     * files; and if all of its contents passed the filters so far.
+     */
+    private static class DirState {
+
+        int filteredCount;
+        boolean complete = true;
+    }
+
+    /*
+     * Returns true if the file passes the file filters. The file's date is
+     * got from its attributes, as read by the walk, without another read
+     * but for symbolic links; the CopyEngine also filters the files with this, as it walks them.
+     */
+    public static boolean accept(FileFilters filters, Path file, BasicFileAttributes attrs) {
+
+        return applyFileTypeFilter(filters, file) &&
+                applyDateOptionFilter(filters, file, attrs);
     }
 
-    private boolean applyFileTypeFilter(FileFilters filters, Path file) {
+    private static boolean applyFileTypeFilter(FileFilters filters, Path file) {
 
         return filters.getFileTypes().contains("All") ||
                 filters.getFileTypes().contains(getFileExtension(file));
     }
 
-    private String getFileExtension(Path file) {
+    private static String getFileExtension(Path file) {
 
         String fileName = file.getFileName().toString();
         int ix = fileName.lastIndexOf(".");
         return (ix == -1) ? "" : fileName.substring(ix + 1);
     }
 
-    private boolean applyDateOptionFilter(FileFilters filters, Path file)
-            throws IOException  {
+    private static boolean applyDateOptionFilter(FileFilters filters,
+                                                 Path file,
+                                                 BasicFileAttributes attrs) {
 
         boolean returnValue;
 
         switch (filters.getDateOption()) {
 
             case TODAY:
-                returnValue = getFileDate(file).isAfter(LocalDate.now());
+                returnValue = getFileDate(file, attrs).isAfter(LocalDate.now());
                 break;
             case LAST_7_DAYS:
-                returnValue = getFileDate(file).isAfter(LocalDate.now().minusDays(7));
+                returnValue = getFileDate(file, attrs).isAfter(LocalDate.now().minusDays(7));
                 break;
             case LAST_30_DAYS:
-                returnValue = getFileDate(file).isAfter(LocalDate.now().minusDays(30));
+                returnValue = getFileDate(file, attrs).isAfter(LocalDate.now().minusDays(30));
                 break;
             default:
                 returnValue = true;
@@ -128,12 +441,26 @@ public class FileFilterApplication {
     }
 
     /*
-     * Returns file's last modified date as a LocalDate.
+     * Returns file's last modified date as a LocalDate. The walk's
+     * attributes of a symbolic link are the link's own, so the date of a
+     * link is read from its target, as Files.getLastModifiedTime() does;
+     * the date of a broken link is the link's own.
      */
-    private LocalDate getFileDate(Path file)
-            throws IOException {
+    private static LocalDate getFileDate(Path file, BasicFileAttributes attrs) {
+
+        Instant fileTime = attrs.lastModifiedTime().toInstant();
+
+        if (attrs.isSymbolicLink()) {
+
+            try {
+                fileTime = Files.getLastModifiedTime(file).toInstant();
+            }
+            catch (IOException e) {
+
+                // a broken link, keep its own date
+            }
+        }
 
-        Instant fileTime = Files.getLastModifiedTime(file).toInstant();
         return fileTime.atZone(ZoneId.systemDefault()).toLocalDate();
     }
 }
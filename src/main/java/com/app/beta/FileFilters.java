@@ -1,20 +1,22 @@
 package com.app.beta;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 
 /*
  * This class represents the file filters data. This data is
- * captured in the FileFiltersDialog and is applied in the files
- * copy routine.
+ * captured in the FileFiltersDialog, or from the command line
+ * arguments of CopyCommand, and is applied in the files copy
+ * routine. It has no JavaFX dependencies.
  */
 public class FileFilters {
 
 
     private boolean allFiles;
     private DateOption dateOpt;
-    private ObservableList<String> fileTypes;
+    private List<String> fileTypes;
 
     /*
      * List of file extensions for selection. "All" specifies that select
@@ -34,7 +36,7 @@ public class FileFilters {
 
         allFiles = false;
         dateOpt = DateOption.ALL_DAYS;
-        fileTypes = FXCollections.observableArrayList("All");
+        fileTypes = new ArrayList<>(Collections.singletonList("All"));
     }
 
     /*
@@ -64,11 +66,11 @@ public class FileFilters {
         return dateOpt;
     }
 
-    public void setFileTypes(ObservableList<String> types) {
+    public void setFileTypes(List<String> types) {
 
         fileTypes = types;
     }
-    public ObservableList<String> getFileTypes() {
+    public List<String> getFileTypes() {
 
         return fileTypes;
     }
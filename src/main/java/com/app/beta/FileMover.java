@@ -0,0 +1,261 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+
+/*
+ * Moves the filtered files from the source directory to the target
+ * directory. When both are on the same file store the files are renamed,
+ * which takes about the same time for any file size: a directory whose
+ * contents all passed the filters is renamed whole, with one rename for
+ * its subtree, and the other filtered files one by one. A directory is
+ * not renamed whole if it exists in the target; its contents are moved
+ * into the existing one, and then it is deleted if it is empty.
+ * On different file stores a rename is not possible: the files are
+ * copied by the CopyEngine and then deleted from the source, with
+ * deleteSources(). The source directory itself is not moved or deleted.
+ */
+public class FileMover {
+
+
+    private final Path sourceDir;
+    private final Path targetDir;
+
+    private int movedFilesCount;
+    private int movedDirsCount;
+    private int deletedFilesCount;
+    private long elapsedMillis;
+
+
+    public FileMover(Path sourceDir, Path targetDir) {
+
+        this.sourceDir = sourceDir;
+        this.targetDir = targetDir;
+    }
+
+    /*
+     * Returns true if the source and the target directories are on the
+     * same file store, and so the files can be moved by renaming them.
+     */
+    public boolean isSameFileStore()
+            throws IOException {
+
+        return Files.getFileStore(sourceDir).equals(Files.getFileStore(targetDir));
+    }
+
+    public int getMovedFilesCount() {
+
+        return movedFilesCount;
+    }
+
+    /*
+     * The count of the directories renamed whole, with their subtrees.
+     */
+    public int getMovedDirsCount() {
+
+        return movedDirsCount;
+    }
+
+    public int getDeletedFilesCount() {
+
+        return deletedFilesCount;
+    }
+
+    public long getElapsedMillis() {
+
+        return elapsedMillis;
+    }
+
+    /*
+     * Moves the filtered files and directories by renaming them; the
+     * complete directories, whose contents all passed the filters, are
+     * renamed whole. See FileFilterApplication.getCompleteDirs(). If the
+     * file system cannot rename an entry atomically, a file is moved by
+     * Files.move() and a directory's contents are moved one by one. The
+     * isCancelled supplier is checked before each directory and file; the
+     * entries moved before the move is cancelled, or fails, stay moved.
+     */
+    public void move(Set<Path> filteredFiles,
+                     Set<Path> completeDirs,
+                     BooleanSupplier isCancelled)
+            throws IOException {
+
+        movedFilesCount = 0;
+        movedDirsCount = 0;
+        long startTime = System.currentTimeMillis();
+
+        try {
+            Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir,
+                                                         BasicFileAttributes attrs)
+                        throws IOException {
+
+                    if (isCancelled.getAsBoolean()) {
+
+                        return FileVisitResult.TERMINATE;
+                    }
+
+                    if (! filteredFiles.contains(dir)) {
+
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    Path target = getTarget(dir);
+
+                    if (dir.equals(sourceDir)) {
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    if (completeDirs.contains(dir) && Files.notExists(target)) {
+
+                        try {
+                            Files.move(dir, target, ATOMIC_MOVE);
+                            movedDirsCount++;
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        catch (AtomicMoveNotSupportedException e) {
+
+                            // move the contents one by one
+                        }
+                    }
+
+                    try {
+                        Files.copy(dir, target);
+                    }
+                    catch (FileAlreadyExistsException e) {
+
+                        if (! Files.isDirectory(target)) {
+
+                            throw e;
+                        }
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs)
+                        throws IOException {
+
+                    if (isCancelled.getAsBoolean()) {
+
+                        return FileVisitResult.TERMINATE;
+                    }
+
+                    if (filteredFiles.contains(file)) {
+
+                        Path target = getTarget(file);
+
+                        try {
+                            Files.move(file, target, ATOMIC_MOVE);
+                        }
+                        catch (AtomicMoveNotSupportedException e) {
+
+                            Files.move(file, target, REPLACE_EXISTING);
+                        }
+
+                        movedFilesCount++;
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                /*
+                 * Deletes a complete directory, which is now empty, unless
+                 * new files were created in it during the move.
+                 */
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+                        throws IOException {
+
+                    if (exc != null) {
+
+                        throw exc;
+                    }
+
+                    if (completeDirs.contains(dir) && (! dir.equals(sourceDir))) {
+
+                        deleteIfEmpty(dir);
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        finally {
+            elapsedMillis = System.currentTimeMillis() - startTime;
+        }
+    }
+
+    /*
+     * Deletes the filtered files from the source after they are copied to
+     * the target, and then the complete directories, which are empty then;
+     * deepest first. Called only after the copy completes.
+     */
+    public void deleteSources(Set<Path> filteredFiles,
+                              Set<Path> completeDirs,
+                              BooleanSupplier isCancelled)
+            throws IOException {
+
+        deletedFilesCount = 0;
+        List<Path> dirs = new ArrayList<>();
+
+        for (Path path : filteredFiles) {
+
+            if (isCancelled.getAsBoolean()) {
+
+                return;
+            }
+
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+
+                if (completeDirs.contains(path) && (! path.equals(sourceDir))) {
+
+                    dirs.add(path);
+                }
+            }
+            else if (Files.deleteIfExists(path)) {
+
+                deletedFilesCount++;
+            }
+        }
+
+        dirs.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+
+        for (Path dir : dirs) {
+
+            deleteIfEmpty(dir);
+        }
+    }
+
+    private Path getTarget(Path source) {
+
+        return targetDir.resolve(sourceDir.relativize(source));
+    }
+
+    private static void deleteIfEmpty(Path dir)
+            throws IOException {
+
+        try {
+            Files.delete(dir);
+        }
+        catch (DirectoryNotEmptyException e) {
+
+            // keep the directory, with its new files
+        }
+    }
+}
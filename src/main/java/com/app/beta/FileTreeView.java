@@ -16,9 +16,7 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Logger;
 
 
@@ -37,8 +35,9 @@ public class FileTreeView {
     private final CopyDialog copyDialog;
     private Path rootDir; // The chosen root or source directory
 
-    // All file and directories that are checked are stored here
-    private final Set<Path> checkedItems;
+    // All file and directories that are checked are stored here; in a
+    // path trie, which stores the names shared by the paths once
+    private final PathTrieSet checkedItems;
 
     // Indexes of selected directory nodes, used with expand or collapse
     // of specific directory nodes.
@@ -61,7 +60,7 @@ public class FileTreeView {
 
         logger = Logger.getLogger("copy_app_logger");
         copyDialog = new CopyDialog();
-        checkedItems = new HashSet<>();
+        checkedItems = new PathTrieSet();
 
         Button expandBtn = new Button('\u2039' + " " + '\u203A');
         expandBtn.setTooltip(new Tooltip("Expand or collapse selected tree items"));
@@ -199,14 +198,9 @@ public class FileTreeView {
 
     private void removeCollectedCheckedItems(FileTreeItem item) {
 
-        if (! item.isSelected()) {
-
-            // A file or directory is unchecked: remove these items
-            checkedItems.remove(item.getValue());
-        }
-
-        item.getChildren()
-                .forEach(t -> removeCollectedCheckedItems((FileTreeItem) t));
+        // Nothing under the item is checked: remove its whole subtree
+        // at once, without loading its children
+        checkedItems.removeSubtree(item.getValue());
     }
 
     /*
@@ -0,0 +1,124 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Copies a file through memory mapped windows of the source and the
+ * target: a window of the source is mapped read only, the same window of
+ * the target is mapped read-write, and the bytes are copied between the
+ * two mapped buffers. The window is much larger than a chunk and is used
+ * for many chunks; the progress is reported and the copy can be stopped
+ * after each chunk. This is used, optionally, for very large files on
+ * local file systems.
+ * Java has no unmap: a mapping is released by the garbage collector, so
+ * the windows are large to keep the mappings alive until then few, about
+ * two per WINDOW_SIZE of the file. The target windows are not forced:
+ * their dirty pages are written back by the page cache, as the writes of
+ * the other strategies are.
+ */
+public class MappedCopyStrategy implements CopyStrategy {
+
+
+    public static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final long windowSize;
+
+
+    public MappedCopyStrategy() {
+
+        this(WINDOW_SIZE);
+    }
+
+    /*
+     * A strategy with another window size; the window is at least a chunk
+     * and at most 2 GB, the largest buffer.
+     */
+    MappedCopyStrategy(long windowSize) {
+
+        this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+    }
+
+    /*
+     * Returns true if files on the file store can be memory mapped. They
+     * are not on a network file store: a failed read or write of a mapped
+     * network file crashes the process.
+     */
+    public static boolean isSupported(FileStore store) {
+
+        return ! StoreLimits.isNetwork(store);
+    }
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        boolean completed = true;
+        long position = context.getResumePosition(source, attrs);
+
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = (position > 0) ?
+                     FileChannel.open(target, READ, WRITE) :
+                     FileChannel.open(target, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+
+            long size = in.size();
+            MappedByteBuffer sourceWindow = null;
+            MappedByteBuffer targetWindow = null;
+            long windowStart = position;
+            long windowEnd = position;
+
+            while (position < size) {
+
+                if (context.isStopped()) {
+
+                    completed = false;
+                    break;
+                }
+
+                if (position >= windowEnd) {
+
+                    windowStart = position;
+                    windowEnd = Math.min(size, windowStart +
+                            Math.max(windowSize, context.getChunkSize()));
+                    sourceWindow = in.map(MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                    targetWindow = out.map(MapMode.READ_WRITE, windowStart, windowEnd - windowStart);
+                }
+
+                int offset = (int) (position - windowStart);
+                int count = (int) Math.min(context.getChunkSize(), windowEnd - position);
+                ByteBuffer chunk = sourceWindow.duplicate();
+                chunk.position(offset).limit(offset + count);
+                targetWindow.duplicate().position(offset).put(chunk);
+
+                position += count;
+                context.bytesCopied(count);
+                context.positionReached(source, attrs, position);
+            }
+
+            // Mapping the target window grows the target to the window's
+            // end; a copy stopped within the window is cut back to the
+            // bytes copied, as the other strategies leave it
+            out.truncate(position);
+        }
+
+        if ((! completed) && (! context.isResumable())) {
+
+            Files.deleteIfExists(target);
+        }
+
+        return completed;
+    }
+}
@@ -0,0 +1,764 @@
+package com.app.beta;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+
+/*
+ * A Set of Paths kept as a tree of their name segments, as the file tree
+ * is: each directory's name is stored once, however many of its files are
+ * in the set, and no Path objects are kept. Used for the selected files of
+ * the FileTreeView and the results of the FileFilterApplication, which can
+ * have millions of paths sharing a few thousand directories; a HashSet
+ * keeps a Path, with its whole path bytes, and a hash entry for each.
+ *
+ * The names are stored as their UTF-8 bytes. A path is looked up by the
+ * ranges of its names in its UTF-8 bytes, see Names, without a Path,
+ * String and byte[] per name; a name's bytes are copied only when it is
+ * added. A path with no paths under
+ * it, usually a file, is only its name bytes in its parent's table; the
+ * others have a Node, with the count of the paths in its subtree. So a
+ * directory's subtree can be tested for paths and removed in time
+ * proportional to the depth of the directory, see containsSubtree() and
+ * removeSubtree(). The names are compared as on a case sensitive file
+ * system; the paths of one set are expected to be from one file system,
+ * as the walk finds them. The iteration order is not defined, and the
+ * Paths are built again as they are iterated. The set is not thread safe.
+ */
+public class PathTrieSet extends AbstractSet<Path> {
+
+
+    // The trees of the paths, by their roots; the relative paths are in
+    // the tree of the empty path.
+    private final Map<Path, Node> roots = new HashMap<>();
+
+    private int size;
+
+
+    public PathTrieSet() {
+    }
+
+    public PathTrieSet(Collection<? extends Path> paths) {
+
+        addAll(paths);
+    }
+
+    @Override
+    public int size() {
+
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+
+        if (! (o instanceof Path)) {
+
+            return false;
+        }
+
+        Object[] chain = findChain((Path) o);
+        return (chain != null) && isMember(chain[chain.length - 1]);
+    }
+
+    /*
+     * Returns true if the set has the path, or any path under it.
+     */
+    public boolean containsSubtree(Path path) {
+
+        Object[] chain = findChain(path);
+        return (chain != null) && (getCount(chain[chain.length - 1]) > 0);
+    }
+
+    @Override
+    public boolean add(Path path) {
+
+        int last = path.getNameCount();
+        Names names = new Names(path);
+        Node[] chain = new Node[last + 1];
+        chain[0] = roots.computeIfAbsent(getRoot(path), root -> new Node(null));
+
+        for (int i = 1; i < last; i++) {
+
+            chain[i] = chain[i - 1].addNode(names, i - 1);
+        }
+
+        if (last == 0) {
+
+            if (chain[0].member) {
+
+                return false;
+            }
+
+            chain[0].member = true;
+        }
+        else {
+            Node parent = chain[last - 1];
+            Object entry = parent.getChild(names, last - 1);
+
+            if (entry == null) {
+
+                parent.addLeaf(names.copyOf(last - 1));
+            }
+            else if (isMember(entry)) {
+
+                return false;
+            }
+            else {
+                ((Node) entry).member = true;
+                ((Node) entry).count++;
+            }
+
+            // the leaf or the node is not in the chain
+            chain = Arrays.copyOf(chain, last);
+        }
+
+        updateCounts(chain, 1);
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+
+        if (! (o instanceof Path)) {
+
+            return false;
+        }
+
+        Path path = (Path) o;
+        Object[] chain = findChain(path);
+
+        if ((chain == null) || (! isMember(chain[chain.length - 1]))) {
+
+            return false;
+        }
+
+        Object entry = chain[chain.length - 1];
+
+        if (entry instanceof Node) {
+
+            ((Node) entry).member = false;
+            ((Node) entry).count--;
+        }
+
+        updateCounts(Arrays.copyOf(chain, chain.length - 1), -1);
+        size--;
+        prune(path, chain);
+        return true;
+    }
+
+    /*
+     * Removes the path and all the paths under it. Returns the count of
+     * the paths removed.
+     */
+    public int removeSubtree(Path path) {
+
+        Object[] chain = findChain(path);
+
+        if (chain == null) {
+
+            return 0;
+        }
+
+        Object entry = chain[chain.length - 1];
+        int removed = getCount(entry);
+
+        if (removed > 0) {
+
+            if (entry instanceof Node) {
+
+                ((Node) entry).count = 0;
+            }
+
+            updateCounts(Arrays.copyOf(chain, chain.length - 1), -removed);
+            size -= removed;
+            prune(path, chain);
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+
+        roots.clear();
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+
+        return new TrieIterator();
+    }
+
+    private static Path getRoot(Path path) {
+
+        Path root = path.getRoot();
+        return (root != null) ? root : path.getFileSystem().getPath("");
+    }
+
+    private static boolean isMember(Object entry) {
+
+        return (entry instanceof byte[]) || ((Node) entry).member;
+    }
+
+    private static int getCount(Object entry) {
+
+        return (entry instanceof byte[]) ? 1 : ((Node) entry).count;
+    }
+
+    private static byte[] getName(Object entry) {
+
+        return (entry instanceof byte[]) ? (byte[]) entry : ((Node) entry).name;
+    }
+
+    /*
+     * Returns the entries from the root to the path's node or leaf, or
+     * null if the path has neither.
+     */
+    private Object[] findChain(Path path) {
+
+        Object[] chain = new Object[path.getNameCount() + 1];
+        chain[0] = roots.get(getRoot(path));
+
+        if ((chain[0] == null) || (chain.length == 1)) {
+
+            return (chain[0] != null) ? chain : null;
+        }
+
+        Names names = new Names(path);
+
+        for (int i = 1; (chain[i - 1] instanceof Node) && (i < chain.length); i++) {
+
+            chain[i] = ((Node) chain[i - 1]).getChild(names, i - 1);
+        }
+
+        return (chain[chain.length - 1] != null) ? chain : null;
+    }
+
+    private static void updateCounts(Object[] chain, int delta) {
+
+        for (Object node : chain) {
+
+            ((Node) node).count += delta;
+        }
+    }
+
+    /*
+     * Detaches the highest entry of the chain which has no paths left in
+     * its subtree, with its subtree; the last entry of the chain has been
+     * removed, or its subtree.
+     */
+    private void prune(Path path, Object[] chain) {
+
+        for (int i = 0; i < chain.length; i++) {
+
+            if ((chain[i] instanceof byte[]) || (getCount(chain[i]) == 0)) {
+
+                if (i == 0) {
+
+                    roots.remove(getRoot(path));
+                }
+                else {
+                    ((Node) chain[i - 1]).removeChild(chain[i]);
+                }
+
+                return;
+            }
+        }
+    }
+
+    /*
+     * The names of a path, as ranges of the UTF-8 bytes of its string: the
+     * root, then the names with a separator before each but the first.
+     * The string of a path is usually kept by the Path, so a lookup
+     * encodes it once, instead of making a Path, String and byte[] per
+     * name. A path whose string does not split so, which no file system of
+     * the JDK makes, has its names encoded one by one into the bytes.
+     */
+    private static final class Names {
+
+        final byte[] bytes;
+        final int[] starts;
+        final int[] ends;
+
+        Names(Path path) {
+
+            int count = path.getNameCount();
+            starts = new int[count];
+            ends = new int[count];
+
+            byte[] pathBytes = path.toString().getBytes(StandardCharsets.UTF_8);
+            Path root = path.getRoot();
+            int rootLength = (root != null) ? getLength(root.toString()) : 0;
+
+            if (split(pathBytes, rootLength,
+                    (byte) path.getFileSystem().getSeparator().charAt(0))) {
+
+                bytes = pathBytes;
+                return;
+            }
+
+            byte[][] names = new byte[count][];
+            int length = 0;
+
+            for (int i = 0; i < count; i++) {
+
+                names[i] = path.getName(i).toString().getBytes(StandardCharsets.UTF_8);
+                starts[i] = length;
+                length += names[i].length;
+                ends[i] = length;
+            }
+
+            bytes = new byte[length];
+
+            for (int i = 0; i < count; i++) {
+
+                System.arraycopy(names[i], 0, bytes, starts[i], names[i].length);
+            }
+        }
+
+        /*
+         * Sets the ranges of the names from the last one back, each after
+         * the separator before it, and the first after the root. Returns
+         * false if the bytes do not split so.
+         */
+        private boolean split(byte[] pathBytes, int rootLength, byte separator) {
+
+            int end = pathBytes.length;
+
+            for (int i = starts.length - 1; i > 0; i--) {
+
+                int j = end - 1;
+
+                while ((j >= rootLength) && (pathBytes[j] != separator)) {
+
+                    j--;
+                }
+
+                if (j < rootLength) {
+
+                    return false;
+                }
+
+                starts[i] = j + 1;
+                ends[i] = end;
+                end = j;
+            }
+
+            if (starts.length > 0) {
+
+                if (end < rootLength) {
+
+                    return false;
+                }
+
+                starts[0] = rootLength;
+                ends[0] = end;
+            }
+
+            return true;
+        }
+
+        byte[] copyOf(int index) {
+
+            return Arrays.copyOfRange(bytes, starts[index], ends[index]);
+        }
+
+        /*
+         * The length of the string in UTF-8, without encoding it.
+         */
+        private static int getLength(String s) {
+
+            int length = 0;
+
+            for (int i = 0; i < s.length(); i++) {
+
+                char c = s.charAt(i);
+
+                if (c < 0x80) {
+
+                    length++;
+                }
+                else if (c < 0x800) {
+
+                    length += 2;
+                }
+                else if (Character.isHighSurrogate(c) && (i + 1 < s.length()) &&
+                        Character.isLowSurrogate(s.charAt(i + 1))) {
+
+                    length += 4;
+                    i++;
+                }
+                else if (Character.isSurrogate(c)) {
+
+                    // encoded as '?'
+                    length++;
+                }
+                else {
+                    length += 3;
+                }
+            }
+
+            return length;
+        }
+    }
+
+    /*
+     * A path with paths under it, or which had some. The children are
+     * kept in an open addressing hash table, with linear probing; each is
+     * a Node, or the name bytes of a path with nothing under it.
+     */
+    private static class Node {
+
+        byte[] name;
+        Object[] children;
+        int childCount;
+
+        // The count of the paths in the subtree, this node's included.
+        int count;
+        boolean member;
+
+        Node(byte[] name) {
+
+            this.name = name;
+        }
+
+        Object getChild(Names names, int index) {
+
+            int i = indexOf(names.bytes, names.starts[index], names.ends[index]);
+            return (i < 0) ? null : children[i];
+        }
+
+        /*
+         * Returns the slot of the child named by the bytes from the index
+         * from to the index to, exclusive, or -1.
+         */
+        private int indexOf(byte[] bytes, int from, int to) {
+
+            if (children == null) {
+
+                return -1;
+            }
+
+            int mask = children.length - 1;
+
+            for (int i = hash(bytes, from, to) & mask; children[i] != null; i = (i + 1) & mask) {
+
+                byte[] childName = getName(children[i]);
+
+                if (Arrays.equals(childName, 0, childName.length, bytes, from, to)) {
+
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /*
+         * Returns the child node of the name, which is added, or made from
+         * the child's leaf, if there is none.
+         */
+        Node addNode(Names names, int index) {
+
+            int i = indexOf(names.bytes, names.starts[index], names.ends[index]);
+
+            if (i < 0) {
+
+                Node child = new Node(names.copyOf(index));
+                add(child);
+                return child;
+            }
+
+            if (children[i] instanceof byte[]) {
+
+                // A leaf gets a path under it
+                Node child = new Node((byte[]) children[i]);
+                child.member = true;
+                child.count = 1;
+                children[i] = child;
+            }
+
+            return (Node) children[i];
+        }
+
+        void addLeaf(byte[] childName) {
+
+            add(childName);
+        }
+
+        private void add(Object child) {
+
+            if (children == null) {
+
+                children = new Object[2];
+            }
+            else if ((childCount + 1) * 3 > children.length * 2) {
+
+                // Keep the table at most two thirds full
+                Object[] old = children;
+                children = new Object[old.length * 2];
+
+                for (Object entry : old) {
+
+                    if (entry != null) {
+
+                        insert(entry);
+                    }
+                }
+            }
+
+            insert(child);
+            childCount++;
+        }
+
+        void removeChild(Object child) {
+
+            int mask = children.length - 1;
+            int i = hash(getName(child)) & mask;
+
+            while (children[i] != child) {
+
+                i = (i + 1) & mask;
+            }
+
+            children[i] = null;
+            childCount--;
+
+            if (childCount == 0) {
+
+                children = null;
+                return;
+            }
+
+            // Insert again the entries after the removed one, up to the
+            // next empty slot, so that none is left behind the gap
+            for (i = (i + 1) & mask; children[i] != null; i = (i + 1) & mask) {
+
+                Object entry = children[i];
+                children[i] = null;
+                insert(entry);
+            }
+        }
+
+        private void insert(Object entry) {
+
+            int mask = children.length - 1;
+            int i = hash(getName(entry)) & mask;
+
+            while (children[i] != null) {
+
+                i = (i + 1) & mask;
+            }
+
+            children[i] = entry;
+        }
+
+        private static int hash(byte[] name) {
+
+            return hash(name, 0, name.length);
+        }
+
+        private static int hash(byte[] bytes, int from, int to) {
+
+            // As Arrays.hashCode() of the range
+            int h = 1;
+
+            for (int i = from; i < to; i++) {
+
+                h = 31 * h + bytes[i];
+            }
+
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /*
+     * Walks the trees depth first, building the Path of each entry from
+     * its parent's. The remove() only unmarks the path, leaving its entry
+     * in the table as an empty node, so the walk is not disturbed; the
+     * empty nodes of a table are detached when the walk leaves it, and an
+     * empty root when the walk leaves its tree. A walk which is left
+     * before its end keeps the empty nodes of the tables it is in; they
+     * are skipped as the paths which are not in the set.
+     */
+    private class TrieIterator implements Iterator<Path> {
+
+        private final Iterator<Map.Entry<Path, Node>> rootsIterator =
+                roots.entrySet().iterator();
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private Path next;
+        private Path last;
+
+        // Whether remove() left empty nodes in the tables.
+        private boolean removed;
+
+        @Override
+        public boolean hasNext() {
+
+            if (next == null) {
+
+                next = advance();
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public Path next() {
+
+            if (! hasNext()) {
+
+                throw new NoSuchElementException();
+            }
+
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+
+            if (last == null) {
+
+                throw new IllegalStateException();
+            }
+
+            Object[] chain = findChain(last);
+            Object entry = chain[chain.length - 1];
+
+            if (entry instanceof byte[]) {
+
+                // Unmarked in the same slot of the table
+                Node parent = (Node) chain[chain.length - 2];
+                byte[] name = (byte[]) entry;
+                parent.children[parent.indexOf(name, 0, name.length)] = new Node(name);
+            }
+            else {
+                ((Node) entry).member = false;
+                ((Node) entry).count--;
+            }
+
+            updateCounts(Arrays.copyOf(chain, chain.length - 1), -1);
+            size--;
+            last = null;
+            removed = true;
+        }
+
+        /*
+         * Detaches the empty nodes of the frame's table, which the walk
+         * has left, and the frame's root if its tree is empty.
+         */
+        private void detachEmpty(Frame frame) {
+
+            if (! removed) {
+
+                return;
+            }
+
+            Node node = frame.node;
+
+            if (node.children != null) {
+
+                for (Object child : node.children.clone()) {
+
+                    if ((child != null) && (getCount(child) == 0)) {
+
+                        node.removeChild(child);
+                    }
+                }
+            }
+
+            if (stack.isEmpty() && (node.count == 0)) {
+
+                rootsIterator.remove();
+            }
+        }
+
+        private Path advance() {
+
+            while (true) {
+
+                if (stack.isEmpty()) {
+
+                    if (! rootsIterator.hasNext()) {
+
+                        return null;
+                    }
+
+                    Map.Entry<Path, Node> root = rootsIterator.next();
+                    stack.push(new Frame(root.getValue(), root.getKey()));
+
+                    if (root.getValue().member) {
+
+                        return root.getKey();
+                    }
+
+                    continue;
+                }
+
+                Frame frame = stack.peek();
+                Object[] children = frame.node.children;
+
+                while ((children != null) && (frame.slot < children.length) &&
+                        (children[frame.slot] == null)) {
+
+                    frame.slot++;
+                }
+
+                if ((children == null) || (frame.slot >= children.length)) {
+
+                    stack.pop();
+                    detachEmpty(frame);
+                    continue;
+                }
+
+                Object child = children[frame.slot++];
+
+                if (getCount(child) == 0) {
+
+                    // only paths removed by this iterator
+                    continue;
+                }
+
+                Path path = frame.path.resolve(
+                        new String(getName(child), StandardCharsets.UTF_8));
+
+                if (child instanceof Node) {
+
+                    stack.push(new Frame((Node) child, path));
+                }
+
+                if (isMember(child)) {
+
+                    return path;
+                }
+            }
+        }
+    }
+
+    private static class Frame {
+
+        final Node node;
+        final Path path;
+        int slot;
+
+        Frame(Node node, Path path) {
+
+            this.node = node;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.app.beta;
+
+import javafx.concurrent.Task;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * A Task of the Copy dialog which shows its progress and the time left
+ * as the work is done: the copy, the copy to several targets and the
+ * archive. The work done is reported by the workers, after each file and
+ * chunk, and is shown at most every PROGRESS_INTERVAL_MILLIS; the workers
+ * call showProgress() concurrently, and one of them shows the progress per
+ * interval. The work is weighted by the bytes, see
+ * CopyEngine.getTotalWork(), and so is the time left.
+ */
+abstract class ProgressTask extends Task<Void> {
+
+
+    static final long PROGRESS_INTERVAL_MILLIS = 200L;
+
+    // The time the progress was last shown.
+    private final AtomicLong lastProgressTime = new AtomicLong();
+
+    // The start of the work, for the time left.
+    private volatile long startTime;
+
+
+    /*
+     * Starts the time of the work, from which the time left is estimated.
+     */
+    void startProgress() {
+
+        startTime = System.currentTimeMillis();
+    }
+
+    /*
+     * Shows the progress and the time left, unless they were shown less
+     * than PROGRESS_INTERVAL_MILLIS ago. Returns true if they are shown.
+     */
+    boolean showProgress(long done, long totalWork) {
+
+        long now = System.currentTimeMillis();
+
+        if (! isProgressDue(now)) {
+
+            return false;
+        }
+
+        updateProgress(done, totalWork);
+        long remaining = CopyEngine.getRemainingMillis(done, totalWork, now - startTime);
+        updateMessage((remaining < 0) ? "Estimating time left..." :
+                "Time left: " + CopyEngine.formatDuration(remaining));
+        return true;
+    }
+
+    /*
+     * Shows the progress against the work found so far, with the message
+     * instead of the time left; for when the total is not known yet.
+     */
+    boolean showProgress(long done, long foundWork, String message) {
+
+        if (! isProgressDue(System.currentTimeMillis())) {
+
+            return false;
+        }
+
+        updateProgress(done, foundWork);
+        updateMessage(message);
+        return true;
+    }
+
+    /*
+     * Shows the completed work, and clears the time left.
+     */
+    void showCompleted(long totalWork) {
+
+        updateProgress(totalWork, totalWork);
+        updateMessage("");
+    }
+
+    private boolean isProgressDue(long now) {
+
+        long last = lastProgressTime.get();
+
+        return (now - last >= PROGRESS_INTERVAL_MILLIS) &&
+                lastProgressTime.compareAndSet(last, now);
+    }
+}
@@ -0,0 +1,81 @@
+package com.app.beta;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+
+/*
+ * A token bucket rate limiter, used by the copy engine to limit the bytes
+ * and the files copied per second. The bucket is refilled at the rate and
+ * holds at most one second's worth of permits. Taking more permits than
+ * available runs into debt, and the caller waits until it is paid off; so
+ * the rate holds on average over any chunk size. The rate can be changed
+ * at any time, e.g., while a copy is running. A rate of 0 is unlimited.
+ */
+public class RateLimiter {
+
+
+    // Waits are done in slices, so that a stopped copy does not wait long.
+    private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private volatile long permitsPerSecond;
+
+    private double availablePermits;
+    private long lastRefillTime = System.nanoTime();
+
+
+    public void setRate(long permitsPerSecond) {
+
+        this.permitsPerSecond = Math.max(permitsPerSecond, 0L);
+    }
+    public long getRate() {
+
+        return permitsPerSecond;
+    }
+
+    public boolean isLimited() {
+
+        return permitsPerSecond > 0;
+    }
+
+    /*
+     * Takes the permits, waiting as long as the rate requires. The wait
+     * ends early when isStopped returns true.
+     */
+    public void acquire(long permits, BooleanSupplier isStopped)
+            throws InterruptedException {
+
+        long waitNanos = reserve(permits);
+        long deadline = System.nanoTime() + waitNanos;
+
+        while ((waitNanos > 0) && (! isStopped.getAsBoolean())) {
+
+            TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, MAX_SLEEP_NANOS));
+            waitNanos = deadline - System.nanoTime();
+        }
+    }
+
+    /*
+     * Refills the bucket for the time elapsed and takes the permits.
+     * Returns the time in nanoseconds until the debt, if any, is paid.
+     */
+    private synchronized long reserve(long permits) {
+
+        long rate = permitsPerSecond;
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastRefillTime) / 1e9;
+        lastRefillTime = now;
+
+        if (rate <= 0) {
+
+            availablePermits = 0;
+            return 0L;
+        }
+
+        availablePermits =
+                Math.min(rate, availablePermits + (elapsedSeconds * rate)) - permits;
+
+        return (availablePermits >= 0) ?
+                0L : (long) ((-availablePermits / rate) * 1e9);
+    }
+}
@@ -0,0 +1,168 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/*
+ * Copies a file so that the target stays sparse. The source is read in
+ * buffers and scanned in blocks of BLOCK_SIZE; the blocks of zeros are not
+ * written, and the other blocks are written at their position in the new
+ * target file. The skipped blocks are holes in the target, which take no
+ * disk space on the file systems that support sparse files. This is used,
+ * optionally, for large files such as VM disk images. The bytes actually
+ * written are reported to the context, next to the bytes copied.
+ */
+public class SparseCopyStrategy implements CopyStrategy {
+
+
+    public static final int BLOCK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final byte [] ZEROS = new byte [BLOCK_SIZE];
+
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        boolean completed = true;
+        long position = context.getResumePosition(source, attrs);
+
+        if (position == 0) {
+
+            // The holes are created in a new file. The SPARSE option is a
+            // hint for the file systems which need it, such as NTFS.
+            Files.deleteIfExists(target);
+        }
+
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = (position > 0) ?
+                     FileChannel.open(target, WRITE) :
+                     FileChannel.open(target, CREATE_NEW, WRITE, SPARSE)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long size = in.size();
+
+            while (position < size) {
+
+                if (context.isStopped()) {
+
+                    completed = false;
+                    break;
+                }
+
+                int count = read(in, buffer, position);
+
+                if (count == 0) {
+
+                    break; // the source was truncated after it was opened
+                }
+
+                long written = writeNonZeroBlocks(out, buffer.array(), count, position);
+                position += count;
+                context.bytesCopied(count, written);
+                context.positionReached(source, attrs, position);
+            }
+
+            if (completed) {
+
+                if (out.size() < position) {
+
+                    // The file ends with a hole; write its last byte
+                    // so that the file has its full size.
+                    out.write(ByteBuffer.wrap(new byte [1]), position - 1);
+                }
+
+                out.truncate(position);
+            }
+        }
+
+        if ((! completed) && (! context.isResumable())) {
+
+            Files.deleteIfExists(target);
+        }
+
+        return completed;
+    }
+
+    /*
+     * Writes the blocks which are not all zeros; consecutive blocks are
+     * written with one write. Returns the count of bytes written.
+     */
+    private static long writeNonZeroBlocks(FileChannel out,
+                                           byte [] data,
+                                           int count,
+                                           long position)
+            throws IOException {
+
+        long written = 0;
+        int runStart = -1;
+
+        for (int offset = 0; offset < count; offset += BLOCK_SIZE) {
+
+            int length = Math.min(BLOCK_SIZE, count - offset);
+            boolean isZero =
+                    Arrays.mismatch(data, offset, offset + length, ZEROS, 0, length) < 0;
+
+            if ((! isZero) && (runStart < 0)) {
+
+                runStart = offset;
+            }
+            else if (isZero && (runStart >= 0)) {
+
+                written += write(out, data, runStart, offset, position);
+                runStart = -1;
+            }
+        }
+
+        if (runStart >= 0) {
+
+            written += write(out, data, runStart, count, position);
+        }
+
+        return written;
+    }
+
+    private static int write(FileChannel out, byte [] data, int from, int to, long position)
+            throws IOException {
+
+        ByteBuffer run = ByteBuffer.wrap(data, from, to - from);
+
+        while (run.hasRemaining()) {
+
+            out.write(run, position + run.position());
+        }
+
+        return to - from;
+    }
+
+    /*
+     * Reads up to a buffer full at the position. Returns the count of
+     * bytes read; this is less than the buffer at the end of the file.
+     */
+    private static int read(FileChannel in, ByteBuffer buffer, long position)
+            throws IOException {
+
+        buffer.clear();
+
+        while (buffer.hasRemaining()) {
+
+            if (in.read(buffer, position + buffer.position()) < 0) {
+
+                break;
+            }
+        }
+
+        return buffer.position();
+    }
+}
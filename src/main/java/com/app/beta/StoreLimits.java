@@ -0,0 +1,133 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/*
+ * The number of files copied at the same time from or to a file store.
+ * Parallel copies keep an SSD busy, but on a hard disk they make the head
+ * seek between the files, and on a network file system they compete for
+ * the connection. The limit is found by the store's type, for example
+ * "nfs" or "ext4", and for a local disk by whether it is rotational, as
+ * reported by Linux in /sys/block/<disk>/queue/rotational.
+ *
+ * The defaults can be overridden with system properties:
+ *   -Dcopy.concurrency.<store type>=n    for example copy.concurrency.nfs=2
+ *   -Dcopy.concurrency.hdd=n             for the rotational disks
+ * A limit of 0 is no limit, i.e. the copy engine's number of workers.
+ */
+public class StoreLimits {
+
+
+    public static final String PROPERTY_PREFIX = "copy.concurrency.";
+
+    // The network file system types.
+    private static final List<String> NETWORK_STORE_TYPES =
+            Arrays.asList("nfs", "nfs4", "cifs", "smbfs", "smb2", "afpfs",
+                    "fuse.sshfs", "webdav", "davfs", "9p");
+
+    public static final int NETWORK_CONCURRENCY = 4;
+    public static final int HDD_CONCURRENCY = 2;
+
+    private static final Map<String, Integer> DEFAULT_LIMITS = new HashMap<>();
+
+    static {
+        for (String type : NETWORK_STORE_TYPES) {
+
+            DEFAULT_LIMITS.put(type, NETWORK_CONCURRENCY);
+        }
+    }
+
+
+    private StoreLimits() {
+    }
+
+    public static boolean isNetwork(FileStore store) {
+
+        return NETWORK_STORE_TYPES.contains(store.type().toLowerCase());
+    }
+
+    /*
+     * Returns the limit of the files copied at the same time from or to
+     * the file store, or 0 for no limit.
+     */
+    public static int getConcurrency(FileStore store) {
+
+        String type = store.type().toLowerCase();
+        Integer limit = Integer.getInteger(PROPERTY_PREFIX + type);
+
+        if (limit != null) {
+
+            return Math.max(limit, 0);
+        }
+
+        if (DEFAULT_LIMITS.containsKey(type)) {
+
+            return DEFAULT_LIMITS.get(type);
+        }
+
+        if (isRotational(store)) {
+
+            return Math.max(Integer.getInteger(PROPERTY_PREFIX + "hdd", HDD_CONCURRENCY), 0);
+        }
+
+        return 0;
+    }
+
+    /*
+     * Returns the lower of the two limits, where 0 is no limit.
+     */
+    public static int min(int limit1, int limit2) {
+
+        if (limit1 == 0) {
+
+            return limit2;
+        }
+
+        return (limit2 == 0) ? limit1 : Math.min(limit1, limit2);
+    }
+
+    /*
+     * The store's name is its device, for example /dev/sda1. The device
+     * file is resolved, as it may be a link such as /dev/mapper/root, and
+     * the rotational flag is read from the device's queue, or for a
+     * partition, from its disk's queue. Elsewhere than on Linux the store
+     * is taken as not rotational.
+     */
+    private static boolean isRotational(FileStore store) {
+
+        if (! store.name().startsWith("/dev/")) {
+
+            return false;
+        }
+
+        try {
+            String device = Paths.get(store.name()).toRealPath().getFileName().toString();
+            Path sysDevice = Paths.get("/sys/class/block", device).toRealPath();
+
+            for (Path dir : Arrays.asList(sysDevice, sysDevice.getParent())) {
+
+                Path rotational = dir.resolve("queue").resolve("rotational");
+
+                if (Files.isReadable(rotational)) {
+
+                    return Files.readAllLines(rotational).get(0).trim().equals("1");
+                }
+            }
+        }
+        catch (IOException | IndexOutOfBoundsException e) {
+
+            // not known, taken as not rotational
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package com.app.beta;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+
+/*
+ * Copies a file with a single Files.copy call. The copy cannot be stopped
+ * once started and the progress is reported at the end; this is used for
+ * the small files.
+ */
+public class StreamCopyStrategy implements CopyStrategy {
+
+
+    @Override
+    public boolean copy(Path source,
+                        Path target,
+                        BasicFileAttributes attrs,
+                        CopyContext context)
+            throws IOException {
+
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        context.bytesCopied(attrs.size());
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+package com.app.beta;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/*
+ * Access to the virtual threads of the JDK 21 and later. The app is built
+ * for Java 11, so the virtual thread executor is looked up by reflection;
+ * on an older JDK the virtual thread mode is not supported and the platform
+ * threads are used. A virtual thread is cheap to create and to block, so a
+ * thread can be started per file or directory; the number of files open at
+ * the same time is then limited with a semaphore of MAX_OPEN_FILES permits,
+ * instead of by the number of threads.
+ */
+public class VirtualThreads {
+
+
+    // Files or directories open at the same time in the virtual thread mode.
+    public static final int MAX_OPEN_FILES = 256;
+
+    // The Executors.newVirtualThreadPerTaskExecutor() method, or null.
+    private static final Method NEW_EXECUTOR = findNewExecutor();
+
+
+    private VirtualThreads() {
+    }
+
+    private static Method findNewExecutor() {
+
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e) {
+
+            return null;
+        }
+    }
+
+    /*
+     * Returns true if the JDK the app runs on has virtual threads.
+     */
+    public static boolean isSupported() {
+
+        return NEW_EXECUTOR != null;
+    }
+
+    /*
+     * Returns an executor which starts a new virtual thread for each task.
+     */
+    public static ExecutorService newExecutor() {
+
+        if (NEW_EXECUTOR == null) {
+
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+}
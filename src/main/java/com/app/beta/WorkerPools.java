@@ -0,0 +1,154 @@
+package com.app.beta;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+
+/*
+ * The worker pools of the CopyEngine, the FanOutCopyEngine and the
+ * CopyVerifier: a fixed pool of daemon threads behind a bounded queue, so
+ * that the thread handing over the files waits while the workers are
+ * behind; or, in the virtual thread mode, a virtual thread per task with
+ * a semaphore of the files open at the same time.
+ */
+final class WorkerPools {
+
+
+    // While waiting for room in a queue, a stop is checked this often.
+    private static final long STOP_CHECK_MILLIS = 100L;
+
+
+    private WorkerPools() {
+    }
+
+    /*
+     * Hands over the copy to the executor. In the virtual thread mode a
+     * permit of the open files semaphore is taken first, and released
+     * when the copy is done; the walking thread waits while all the
+     * permits are taken. Returns false if the walking thread was
+     * interrupted while waiting, i.e. the copy is cancelled.
+     */
+    static boolean execute(ExecutorService executor,
+                           Semaphore openFiles,
+                           Runnable copy) {
+
+        if (openFiles == null) {
+
+            try {
+                executor.execute(copy);
+                return true;
+            }
+            catch (RejectedExecutionException e) {
+
+                // The copy is stopped
+                return false;
+            }
+        }
+
+        try {
+            openFiles.acquire();
+        }
+        catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+
+                try {
+                    copy.run();
+                }
+                finally {
+                    openFiles.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+
+            openFiles.release();
+            throw e;
+        }
+
+        return true;
+    }
+
+    /*
+     * A fixed pool of daemon threads with a bounded queue of queuedTasks.
+     * A hand-over to a full queue waits for room, until isStopped returns
+     * true.
+     */
+    static ThreadPoolExecutor newWorkerPool(String threadName,
+                                            int threads,
+                                            int queuedTasks,
+                                            BooleanSupplier isStopped) {
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, threadName + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+
+        return new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queuedTasks),
+                threadFactory,
+                (r, executor) -> putInQueue(r, executor, isStopped));
+    }
+
+    private static void putInQueue(Runnable r,
+                                   ThreadPoolExecutor executor,
+                                   BooleanSupplier isStopped) {
+
+        try {
+            while (! executor.getQueue().offer(r, STOP_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                if (executor.isShutdown() || isStopped.getAsBoolean()) {
+
+                    throw new RejectedExecutionException("Copy stopped");
+                }
+            }
+        }
+        catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Copy interrupted", e);
+        }
+    }
+
+    /*
+     * Waits for the queued copies to complete. When the copy is stopped
+     * the queued files are dropped and the running copies are let to
+     * finish their current file.
+     */
+    static void awaitWorkers(ExecutorService executor, BooleanSupplier isStopped)
+            throws InterruptedException {
+
+        executor.shutdown();
+
+        try {
+            while (! executor.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+
+                if (isStopped.getAsBoolean()) {
+
+                    executor.shutdownNow();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+
+            // The copy Task's thread is interrupted when it is cancelled
+            executor.shutdownNow();
+            throw e;
+        }
+    }
+}
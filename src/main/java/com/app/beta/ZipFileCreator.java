@@ -1,21 +1,36 @@
 package com.app.beta;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 
 /*
- * Class has one static method.
- * Creates a ZIP (compressed archive) file for the supplied directory with
- * files. This directory is the same as the target directory as a result of
- * copy action in Copy Dialog.
- * The ZIP file created is in the same directory in which the supplied directory
- * is present.
+ * Creates ZIP (compressed archive) files. The class has:
+ *   zip(Path)   zips a directory, the target directory of a copy in the
+ *               Copy Dialog, into a ZIP file next to it
+ *   zip(Path, Set, Path, BooleanSupplier, LongConsumer[, Archive])
+ *               two overloads which zip the filtered source files straight
+ *               into a ZIP file, without a copy, for the archive only mode
+ *   getZipFile  the ZIP file of a directory, next to it
+ *   ArchiveWriter  adds the files to a ZIP file as the copy engine copies
+ *               them, instead of zipping the target after the copy
+ *   Archive     the counts of an archive only mode archive, for the
+ *               CopyMetrics MBean
  */
 public class ZipFileCreator {
 
@@ -23,9 +38,7 @@ public class ZipFileCreator {
     public static String zip(Path input)
             throws IOException {
 
-        String targetFileNameStr = input.getFileName().toString() + ".zip";
-        Path targetPath =
-                Paths.get(input.getParent().toString(), targetFileNameStr);
+        Path targetPath = getZipFile(input);
         ZipOutputStream zipOutputStream =
                 new ZipOutputStream(new FileOutputStream(targetPath.toString()));
 
@@ -59,4 +72,366 @@ public class ZipFileCreator {
         zipOutputStream.close();
         return targetPath.toString();
     }
+
+    /*
+     * The ZIP file of the directory: in its parent directory, with its
+     * name, for example "backup.zip" for the directory "backup".
+     */
+    public static Path getZipFile(Path dir) {
+
+        return dir.resolveSibling(dir.getFileName() + ".zip");
+    }
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * Creates the ZIP file with the filtered files of the source directory,
+     * read from the source; the filtered directories are not added, as
+     * their files have their paths. The entry names are the files' paths
+     * relative to the source, with "/" separators. The progress listener
+     * is notified with the work done after each file and buffer: the count
+     * of the files plus the bytes, as by CopyEngine.getTotalWork(). If the
+     * isCancelled supplier returns true, the partial ZIP file is deleted.
+     */
+    public static String zip(Path sourceDir,
+                             Set<Path> filteredFiles,
+                             Path zipFile,
+                             BooleanSupplier isCancelled,
+                             LongConsumer progressListener)
+            throws IOException {
+
+        return zip(sourceDir, filteredFiles, zipFile, isCancelled, progressListener,
+                new Archive());
+    }
+
+    /*
+     * As zip() above, with the counts of the archive kept in the Archive.
+     */
+    public static String zip(Path sourceDir,
+                             Set<Path> filteredFiles,
+                             Path zipFile,
+                             BooleanSupplier isCancelled,
+                             LongConsumer progressListener,
+                             Archive archive)
+            throws IOException {
+
+        boolean completed = false;
+        archive.start();
+
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(
+                new BufferedOutputStream(archive.countWritten(Files.newOutputStream(zipFile)),
+                        BUFFER_SIZE))) {
+
+            completed = zipFiles(sourceDir, filteredFiles, zipOutputStream,
+                    isCancelled, progressListener, archive);
+        }
+        finally {
+            archive.end();
+
+            if (! completed) {
+
+                Files.deleteIfExists(zipFile);
+            }
+        }
+
+        return zipFile.toString();
+    }
+
+    private static boolean zipFiles(Path sourceDir,
+                                    Set<Path> filteredFiles,
+                                    ZipOutputStream zipOutputStream,
+                                    BooleanSupplier isCancelled,
+                                    LongConsumer progressListener,
+                                    Archive archive)
+            throws IOException {
+
+        byte [] buf = new byte [BUFFER_SIZE];
+        long [] workDone = { 0L };
+
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+
+                if (isCancelled.getAsBoolean()) {
+
+                    return FileVisitResult.TERMINATE;
+                }
+
+                return filteredFiles.contains(dir) ?
+                        FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+
+                if (! filteredFiles.contains(file)) {
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                ZipEntry zipEntry = new ZipEntry(getEntryName(sourceDir, file));
+                zipEntry.setLastModifiedTime(attrs.lastModifiedTime());
+                zipOutputStream.putNextEntry(zipEntry);
+
+                try (InputStream in = Files.newInputStream(file)) {
+
+                    if (! write(in, zipOutputStream, buf, isCancelled, count -> {
+                        archive.readBytesCount.addAndGet(count);
+                        progressListener.accept(workDone[0] += count);
+                    })) {
+
+                        return FileVisitResult.TERMINATE;
+                    }
+                }
+
+                zipOutputStream.closeEntry();
+                archive.archivedFilesCount.incrementAndGet();
+                progressListener.accept(++workDone[0]);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return ! isCancelled.getAsBoolean();
+    }
+
+    /*
+     * Writes the input to the output; returns false if cancelled.
+     */
+    private static boolean write(InputStream in,
+                                 OutputStream out,
+                                 byte [] buf,
+                                 BooleanSupplier isCancelled,
+                                 LongConsumer bytesWritten)
+            throws IOException {
+
+        int bytesRead;
+
+        while ((bytesRead = in.read(buf)) > 0) {
+
+            if (isCancelled.getAsBoolean()) {
+
+                return false;
+            }
+
+            out.write(buf, 0, bytesRead);
+            bytesWritten.accept(bytesRead);
+        }
+
+        return true;
+    }
+
+    /*
+     * Writes files to a ZIP file one by one, as they are added; the ZIP
+     * file is created with the first file. Not thread safe: the files are
+     * added by one thread.
+     */
+    public static class ArchiveWriter implements Closeable {
+
+        private final Path zipFile;
+        private final byte [] buf = new byte [BUFFER_SIZE];
+        private ZipOutputStream zipOutputStream;
+        private int filesCount;
+
+        public ArchiveWriter(Path zipFile) {
+
+            this.zipFile = zipFile;
+        }
+
+        public Path getZipFile() {
+
+            return zipFile;
+        }
+
+        public int getFilesCount() {
+
+            return filesCount;
+        }
+
+        /*
+         * Adds the file, under its path relative to the directory.
+         */
+        public void add(Path dir, Path file)
+                throws IOException {
+
+            if (zipOutputStream == null) {
+
+                zipOutputStream = new ZipOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(zipFile), BUFFER_SIZE));
+            }
+
+            ZipEntry zipEntry = new ZipEntry(getEntryName(dir, file));
+            zipEntry.setLastModifiedTime(Files.getLastModifiedTime(file));
+            zipOutputStream.putNextEntry(zipEntry);
+
+            try (InputStream in = Files.newInputStream(file)) {
+
+                write(in, zipOutputStream, buf, () -> false, count -> {});
+            }
+
+            zipOutputStream.closeEntry();
+            filesCount++;
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+
+            if (zipOutputStream != null) {
+
+                zipOutputStream.close();
+            }
+        }
+
+        /*
+         * Closes and deletes the incomplete ZIP file.
+         */
+        public void delete()
+                throws IOException {
+
+            try {
+                close();
+            }
+            finally {
+                Files.deleteIfExists(zipFile);
+            }
+        }
+    }
+
+    /*
+     * The counts of an archive of the archive only mode, as it is written:
+     * the files and bytes read from the source, and the bytes written to
+     * the ZIP file. The files to archive are filtered before it starts;
+     * their count is set when they are found.
+     */
+    public static class Archive implements CopyMetrics.Source {
+
+        private volatile int filesCount = -1;
+        private final AtomicInteger archivedFilesCount = new AtomicInteger();
+        private final AtomicLong readBytesCount = new AtomicLong();
+        private final AtomicLong writtenBytesCount = new AtomicLong();
+        private volatile long startTime;
+        private volatile long elapsedMillis;
+        private volatile boolean running;
+
+        public void setFilesCount(int n) {
+
+            filesCount = n;
+        }
+
+        void start() {
+
+            startTime = System.currentTimeMillis();
+            running = true;
+        }
+
+        void end() {
+
+            elapsedMillis = System.currentTimeMillis() - startTime;
+            running = false;
+        }
+
+        OutputStream countWritten(OutputStream out) {
+
+            return new FilterOutputStream(out) {
+
+                @Override
+                public void write(int b)
+                        throws IOException {
+
+                    out.write(b);
+                    writtenBytesCount.incrementAndGet();
+                }
+
+                @Override
+                public void write(byte [] b, int off, int len)
+                        throws IOException {
+
+                    out.write(b, off, len);
+                    writtenBytesCount.addAndGet(len);
+                }
+            };
+        }
+
+        @Override
+        public long getCopiedBytesCount() {
+
+            return readBytesCount.get();
+        }
+
+        @Override
+        public long getWrittenBytesCount() {
+
+            return writtenBytesCount.get();
+        }
+
+        @Override
+        public int getCopiedFilesCount() {
+
+            return archivedFilesCount.get();
+        }
+
+        @Override
+        public int getCopiedDirsCount() {
+
+            return 0;
+        }
+
+        /*
+         * An archive stops at its first error, which fails the job.
+         */
+        @Override
+        public long getErrorsCount() {
+
+            return 0L;
+        }
+
+        @Override
+        public int getFoundFilesCount() {
+
+            return Math.max(filesCount, 0);
+        }
+
+        @Override
+        public boolean isWalkCompleted() {
+
+            return filesCount >= 0;
+        }
+
+        @Override
+        public int getActiveWorkersCount() {
+
+            return running ? 1 : 0;
+        }
+
+        @Override
+        public int getArchivedFilesCount() {
+
+            return archivedFilesCount.get();
+        }
+
+        @Override
+        public long getRunningMillis() {
+
+            return running ? (System.currentTimeMillis() - startTime) : elapsedMillis;
+        }
+    }
+
+    private static String getEntryName(Path sourceDir, Path file) {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (Path name : sourceDir.relativize(file)) {
+
+            if (sb.length() > 0) {
+
+                sb.append('/');
+            }
+
+            sb.append(name);
+        }
+
+        return sb.toString();
+    }
 }
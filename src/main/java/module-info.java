@@ -2,8 +2,10 @@ module com.app.copypasteapp {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.logging;
+    requires java.management;
 
 
     opens com.app to javafx.fxml;
     exports com.app;
+    exports com.app.beta to java.management;
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.app.beta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/*
+ * Checks the overlapped reads and writes of AsyncCopyStrategy against the
+ * transferTo chunks of ChannelCopyStrategy, on a file of several buffers
+ * and a last partial one. The times of the two, within a device or
+ * between two, are compared by CopyStrategyBenchmark.
+ */
+class AsyncCopyStrategyTest {
+
+
+    private static final int CHUNK_SIZE = CopyEngine.DEFAULT_CHUNK_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+
+    @Test
+    void copiesAsTheChannelStrategyDoes()
+            throws Exception {
+
+        Path source = tempDir.resolve("source.bin");
+        byte [] data = new byte [5 * AsyncCopyStrategy.BUFFER_SIZE + 4321];
+        new Random(9).nextBytes(data);
+        Files.write(source, data);
+
+        Path channelTarget = tempDir.resolve("channel.bin");
+        Path asyncTarget = tempDir.resolve("async.bin");
+
+        copy(new ChannelCopyStrategy(), source, channelTarget);
+        copy(new AsyncCopyStrategy(), source, asyncTarget);
+
+        assertArrayEquals(data, Files.readAllBytes(channelTarget));
+        assertArrayEquals(data, Files.readAllBytes(asyncTarget));
+    }
+
+    private static void copy(CopyStrategy strategy, Path source, Path target)
+            throws Exception {
+
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        TestCopyContext context = new TestCopyContext(CHUNK_SIZE);
+
+        assertTrue(strategy.copy(source, target, attrs, context));
+        assertEquals(attrs.size(), context.copiedBytes.get());
+    }
+}
@@ -0,0 +1,92 @@
+package com.app.beta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/*
+ * Checks that the manifest of a sync has all the files, also the ones
+ * skipped as unchanged.
+ */
+class CopyManifestTest {
+
+
+    @TempDir
+    Path tempDir;
+
+
+    @Test
+    void keepsTheEntriesOfTheSkippedFiles()
+            throws Exception {
+
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        Path a = write(sourceDir.resolve("a.txt"), "first a", 1000L);
+        Path b = write(sourceDir.resolve("b.txt"), "first b", 1000L);
+        Set<Path> files = Set.of(sourceDir, a, b);
+
+        newEngine(sourceDir, targetDir, ChecksumAlgorithm.CRC32C).copy(files, () -> false);
+        write(b, "second b", 2000L);
+
+        CopyEngine sync = newEngine(sourceDir, targetDir, ChecksumAlgorithm.CRC32C);
+        sync.copy(files, () -> false);
+
+        assertEquals(1, sync.getSkippedFilesCount());
+        assertEquals(1, sync.getCopiedFilesCount());
+        assertEquals(Set.of("a.txt", "b.txt"), readManifest(sync).keySet());
+        assertTrue(CopyVerifier.of(sync).verify(() -> false).isEmpty());
+    }
+
+    @Test
+    void hashesTheSkippedTargetsWithoutAnEarlierManifest()
+            throws Exception {
+
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        Path a = write(sourceDir.resolve("a.txt"), "a", 1000L);
+        Set<Path> files = Set.of(sourceDir, a);
+
+        newEngine(sourceDir, targetDir, null).copy(files, () -> false);
+
+        CopyEngine sync = newEngine(sourceDir, targetDir, ChecksumAlgorithm.SHA_256);
+        sync.copy(files, () -> false);
+
+        assertEquals(1, sync.getSkippedFilesCount());
+        assertEquals(Set.of("a.txt"), readManifest(sync).keySet());
+        assertTrue(CopyVerifier.of(sync).verify(() -> false).isEmpty());
+
+        // A damaged target is found by the verify
+        Files.writeString(targetDir.resolve("a.txt"), "b");
+        assertEquals(1, CopyVerifier.of(sync).verify(() -> false).size());
+    }
+
+    private static CopyEngine newEngine(Path sourceDir, Path targetDir, ChecksumAlgorithm algorithm) {
+
+        CopyEngine engine = new CopyEngine(sourceDir, targetDir);
+        engine.setSyncMode(true);
+        engine.setChecksumAlgorithm(algorithm);
+        return engine;
+    }
+
+    private static Map<String, CopyManifest.Entry> readManifest(CopyEngine engine)
+            throws Exception {
+
+        return CopyManifest.read(engine.getManifestFile());
+    }
+
+    private static Path write(Path file, String text, long modifiedMillis)
+            throws Exception {
+
+        Files.writeString(file, text);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedMillis));
+        return file;
+    }
+}
@@ -0,0 +1,94 @@
+package com.app.beta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/*
+ * Compares the bytes the delta mode writes to update a large target with
+ * the bytes a full copy writes.
+ */
+class DeltaCopyStrategyTest {
+
+
+    private static final int FILE_SIZE = 64 * DeltaCopyStrategy.BLOCK_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+
+    @Test
+    void rewritesOnlyTheChangedBlocks()
+            throws Exception {
+
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        Path file = sourceDir.resolve("dump.bin");
+        byte [] data = new byte [FILE_SIZE];
+        new Random(4).nextBytes(data);
+        Files.write(file, data);
+
+        CopyEngine fullCopy = newEngine(sourceDir, targetDir, false);
+        fullCopy.copy(Set.of(sourceDir, file), () -> false);
+        assertEquals(FILE_SIZE, fullCopy.getWrittenBytesCount());
+
+        // One byte changed in each of three blocks
+        int [] changedBlocks = { 0, 17, 63 };
+
+        for (int block : changedBlocks) {
+
+            data[block * DeltaCopyStrategy.BLOCK_SIZE + 5] ^= 1;
+        }
+
+        Files.write(file, data);
+
+        CopyEngine deltaCopy = newEngine(sourceDir, targetDir, true);
+        deltaCopy.copy(Set.of(sourceDir, file), () -> false);
+
+        assertEquals(FILE_SIZE, deltaCopy.getCopiedBytesCount());
+        assertEquals((long) changedBlocks.length * DeltaCopyStrategy.BLOCK_SIZE,
+                deltaCopy.getWrittenBytesCount());
+        assertArrayEquals(data, Files.readAllBytes(targetDir.resolve("dump.bin")));
+    }
+
+    @Test
+    void truncatesATargetLargerThanTheSource()
+            throws Exception {
+
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        Path file = sourceDir.resolve("dump.bin");
+        byte [] data = new byte [FILE_SIZE];
+        new Random(5).nextBytes(data);
+        Files.write(targetDir.resolve("dump.bin"), data);
+
+        byte [] shorter = new byte [FILE_SIZE / 2];
+        System.arraycopy(data, 0, shorter, 0, shorter.length);
+        Files.write(file, shorter);
+
+        CopyEngine deltaCopy = newEngine(sourceDir, targetDir, true);
+        deltaCopy.copy(Set.of(sourceDir, file), () -> false);
+
+        assertEquals(0L, deltaCopy.getWrittenBytesCount());
+        assertArrayEquals(shorter, Files.readAllBytes(targetDir.resolve("dump.bin")));
+    }
+
+    /*
+     * An engine with the smallest chunks, so that the file is copied as a
+     * large file.
+     */
+    private static CopyEngine newEngine(Path sourceDir, Path targetDir, boolean deltaMode) {
+
+        CopyEngine engine = new CopyEngine(sourceDir, targetDir);
+        engine.setChunkSize(CopyEngine.MIN_CHUNK_SIZE);
+        engine.setDeltaMode(deltaMode);
+        return engine;
+    }
+}
@@ -0,0 +1,214 @@
+package com.app.beta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/*
+ * Checks the pruning of the directories without filtered files, and the
+ * complete directories, on a synthetic deep tree; against the walk which
+ * searched the filtered files for each directory, as the filter did
+ * before the directories' states were kept on the walk's stack. The times
+ * of both are compared by FileFilterBenchmark.
+ */
+class FileFilterApplicationTest {
+
+
+    @TempDir
+    Path tempDir;
+
+    private static final int DEPTH = 24;
+
+
+    @Test
+    void prunesAsTheSearchOfTheFilteredFiles()
+            throws Exception {
+
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Set<Path> selectedFiles = new HashSet<>();
+        createTree(sourceDir, 0, true, new Random(24), selectedFiles);
+        FileFilters filters = new FileFilters();
+        filters.setFileTypes(List.of("txt"));
+
+        FileFilterApplication filterApplication = new FileFilterApplication();
+        Set<Path> filteredFiles = filterApplication.apply(sourceDir, selectedFiles, filters);
+
+        Set<Path> expectedCompleteDirs = new HashSet<>();
+        Set<Path> expectedFiles =
+                applyWithSearch(sourceDir, selectedFiles, filters, expectedCompleteDirs);
+
+        assertEquals(expectedFiles, new HashSet<>(filteredFiles));
+        assertEquals(expectedCompleteDirs, new HashSet<>(filterApplication.getCompleteDirs()));
+
+        long expectedDirs = expectedFiles.stream()
+                .filter(p -> Files.isDirectory(p) && (! p.equals(sourceDir)))
+                .count();
+        assertEquals(expectedDirs, filterApplication.getDirsCount());
+        assertEquals(expectedFiles.size() - expectedDirs - 1, filterApplication.getFilesCount());
+
+        // The tree has every kind of directory
+        assertTrue(expectedCompleteDirs.size() > 1);
+        assertTrue(expectedFiles.size() - expectedDirs > expectedCompleteDirs.size());
+    }
+
+    @Test
+    void keepsNoDirectoryWithoutFilteredFiles()
+            throws Exception {
+
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Path deep = Files.createDirectories(sourceDir.resolve("a/b/c/d/e"));
+        Files.writeString(deep.resolve("file.class"), "x");
+        Files.createDirectories(sourceDir.resolve("a/empty"));
+        FileFilters filters = new FileFilters();
+        filters.setFileTypes(List.of("txt"));
+
+        FileFilterApplication filterApplication = new FileFilterApplication();
+        Set<Path> filteredFiles = filterApplication.apply(sourceDir, filters);
+
+        assertTrue(filteredFiles.isEmpty());
+        assertTrue(filterApplication.getCompleteDirs().isEmpty());
+        assertEquals(0, filterApplication.getDirsCount());
+    }
+
+    /*
+     * Creates a tree of random depth, with a spine of DEPTH levels below
+     * the source; with filtered and other files, empty directories, and
+     * directories or files which are not selected. The selected paths are
+     * added.
+     */
+    static void createTree(Path dir,
+                           int depth,
+                           boolean spine,
+                           Random random,
+                           Set<Path> selected)
+            throws IOException {
+
+        selected.add(dir);
+        int files = random.nextInt(5);
+
+        for (int i = 0; i < files; i++) {
+
+            Path file = dir.resolve("file" + i + (random.nextInt(4) == 0 ? ".class" : ".txt"));
+            Files.writeString(file, file.toString());
+
+            if (random.nextInt(20) != 0) {
+
+                selected.add(file);
+            }
+        }
+
+        if (spine && (depth < DEPTH)) {
+
+            createTree(Files.createDirectory(dir.resolve("spine")), depth + 1, true,
+                    random, selected);
+        }
+
+        int subdirs = (depth < DEPTH) ? (random.nextInt(3) + ((depth < 3) ? 2 : 0)) : 0;
+
+        for (int i = 0; i < subdirs; i++) {
+
+            Path subdir = Files.createDirectory(dir.resolve("dir" + i));
+
+            if (random.nextInt(15) == 0) {
+
+                continue; // not selected, nor its contents
+            }
+
+            createTree(subdir, depth + 1, false, random, selected);
+        }
+    }
+
+    /*
+     * Applies the filters as FileFilterApplication did when it searched
+     * the filtered files for each directory visited; the complete
+     * directories are added to completeDirs.
+     */
+    static Set<Path> applyWithSearch(Path sourceDir,
+                                     Set<Path> selectedFiles,
+                                     FileFilters filters,
+                                     Set<Path> completeDirs)
+            throws IOException {
+
+        Set<Path> filteredFiles = new HashSet<>();
+        Deque<boolean[]> completeStack = new ArrayDeque<>();
+
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+
+                if (! selectedFiles.contains(dir)) {
+
+                    setIncomplete();
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                completeStack.push(new boolean[] { true });
+                return FileVisitResult.CONTINUE;
+            }
+
+            private void setIncomplete() {
+
+                if (! completeStack.isEmpty()) {
+
+                    completeStack.peek()[0] = false;
+                }
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+
+                if (selectedFiles.contains(file) &&
+                        FileFilterApplication.accept(filters, file, attrs)) {
+
+                    filteredFiles.add(file);
+                }
+                else {
+                    setIncomplete();
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+
+                boolean complete = completeStack.pop()[0] && (exc == null);
+
+                if (filteredFiles.stream().anyMatch(p -> (! p.equals(dir)) && p.startsWith(dir))) {
+
+                    filteredFiles.add(dir);
+
+                    if (complete) {
+
+                        completeDirs.add(dir);
+                    }
+                }
+
+                if (! completeDirs.contains(dir)) {
+
+                    setIncomplete();
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return filteredFiles;
+    }
+}
@@ -0,0 +1,80 @@
+package com.app.beta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/*
+ * Checks the copy through the sliding windows of MappedCopyStrategy, and
+ * against the transferTo chunks of ChannelCopyStrategy. The times of the
+ * two are compared by CopyStrategyBenchmark.
+ */
+class MappedCopyStrategyTest {
+
+
+    @TempDir
+    Path tempDir;
+
+
+    @Test
+    void copiesAcrossManyWindows()
+            throws Exception {
+
+        // Windows of 1 MB, chunks of 64 KB, and a last window partly used
+        Path source = writeSource(9 * 1024 * 1024 + 12345);
+        Path target = tempDir.resolve("target.bin");
+        TestCopyContext context = new TestCopyContext(CopyEngine.MIN_CHUNK_SIZE);
+
+        assertTrue(new MappedCopyStrategy(1024 * 1024)
+                .copy(source, target, readAttributes(source), context));
+
+        assertEquals(Files.size(source), context.copiedBytes.get());
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    void copiesAsTransferTo()
+            throws Exception {
+
+        Path source = writeSource(3 * CopyEngine.DEFAULT_CHUNK_SIZE + 789);
+        Path mappedTarget = tempDir.resolve("mapped.bin");
+        Path channelTarget = tempDir.resolve("channel.bin");
+
+        copy(new MappedCopyStrategy(), source, mappedTarget);
+        copy(new ChannelCopyStrategy(), source, channelTarget);
+
+        byte [] data = Files.readAllBytes(source);
+        assertArrayEquals(data, Files.readAllBytes(mappedTarget));
+        assertArrayEquals(data, Files.readAllBytes(channelTarget));
+    }
+
+    private Path writeSource(long size)
+            throws Exception {
+
+        Path source = tempDir.resolve("source.bin");
+        byte [] data = new byte [(int) size];
+        new Random(10).nextBytes(data);
+        Files.write(source, data);
+        return source;
+    }
+
+    private static void copy(CopyStrategy strategy, Path source, Path target)
+            throws Exception {
+
+        assertTrue(strategy.copy(source, target, readAttributes(source),
+                new TestCopyContext(CopyEngine.DEFAULT_CHUNK_SIZE)));
+    }
+
+    private static BasicFileAttributes readAttributes(Path file)
+            throws Exception {
+
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
@@ -0,0 +1,184 @@
+package com.app.beta;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/*
+ * Checks the PathTrieSet against a HashSet with random operations, on
+ * absolute and relative paths of a few names, the roots included.
+ */
+class PathTrieSetTest {
+
+
+    private static final List<String> NAMES = List.of("a", "b", "c", "d");
+
+    private static final int OPERATIONS = 20_000;
+
+
+    @Test
+    void actsAsAHashSet() {
+
+        Random random = new Random(25);
+        PathTrieSet trie = new PathTrieSet();
+        Set<Path> expected = new HashSet<>();
+
+        for (int i = 0; i < OPERATIONS; i++) {
+
+            Path path = randomPath(random);
+            String step = "step " + i + " on " + path;
+
+            switch (random.nextInt(8)) {
+
+                case 0:
+                case 1:
+                case 2:
+                    assertEquals(expected.add(path), trie.add(path), step);
+                    break;
+
+                case 3:
+                    assertEquals(expected.remove(path), trie.remove(path), step);
+                    break;
+
+                case 4:
+                    int removed = removeSubtree(expected, path);
+                    assertEquals(removed, trie.removeSubtree(path), step);
+                    break;
+
+                case 5:
+                    // Some paths removed while walking, up to the end or not
+                    int walked = random.nextInt(3) == 0 ? random.nextInt(20) : Integer.MAX_VALUE;
+                    removeWhileWalking(trie, expected, random, walked);
+                    break;
+
+                default:
+                    assertEquals(expected.contains(path), trie.contains(path), step);
+                    assertEquals(containsSubtree(expected, path), trie.containsSubtree(path), step);
+                    break;
+            }
+
+            assertEquals(expected.size(), trie.size(), step);
+
+            if (i % 100 == 0) {
+
+                assertEquals(expected, iterate(trie), step);
+            }
+        }
+
+        assertEquals(expected, iterate(trie));
+    }
+
+    @Test
+    void keepsTheRoots() {
+
+        Path root = Path.of("/");
+        Path empty = Path.of("");
+        PathTrieSet trie = new PathTrieSet(List.of(root, empty, Path.of("/a/b"), Path.of("a")));
+
+        assertTrue(trie.contains(root));
+        assertTrue(trie.contains(empty));
+        assertFalse(trie.contains(Path.of("/a")));
+        assertTrue(trie.containsSubtree(Path.of("/a")));
+
+        assertEquals(1, trie.removeSubtree(Path.of("/a")));
+        assertEquals(Set.of(root, empty, Path.of("a")), iterate(trie));
+
+        assertTrue(trie.remove(root));
+        assertFalse(trie.containsSubtree(root));
+        assertTrue(trie.add(root));
+
+        trie.removeIf(root::equals);
+        assertEquals(Set.of(empty, Path.of("a")), iterate(trie));
+        assertFalse(trie.containsSubtree(root));
+
+        trie.removeIf(p -> true);
+        assertTrue(trie.isEmpty());
+        assertTrue(iterate(trie).isEmpty());
+        assertTrue(trie.add(Path.of("a/b")));
+        assertEquals(Set.of(Path.of("a/b")), iterate(trie));
+    }
+
+    /*
+     * A path of up to four names, or a root; absolute or relative.
+     */
+    private static Path randomPath(Random random) {
+
+        int names = random.nextInt(5);
+        StringBuilder sb = new StringBuilder(random.nextBoolean() ? "/" : "");
+
+        for (int i = 0; i < names; i++) {
+
+            if (i > 0) {
+
+                sb.append('/');
+            }
+
+            sb.append(NAMES.get(random.nextInt(NAMES.size())));
+        }
+
+        return Path.of(sb.toString());
+    }
+
+    private static boolean isUnder(Path path, Path dir) {
+
+        return path.equals(dir) ||
+                ((! dir.toString().isEmpty()) && path.startsWith(dir));
+    }
+
+    private static boolean containsSubtree(Set<Path> paths, Path dir) {
+
+        return paths.stream().anyMatch(p -> isUnder(p, dir));
+    }
+
+    private static int removeSubtree(Set<Path> paths, Path dir) {
+
+        int size = paths.size();
+        paths.removeIf(p -> isUnder(p, dir));
+        return size - paths.size();
+    }
+
+    /*
+     * Removes about a third of the paths met by the trie's iterator, for
+     * the count of paths walked; the same paths from the expected set.
+     */
+    private static void removeWhileWalking(PathTrieSet trie,
+                                           Set<Path> expected,
+                                           Random random,
+                                           int walked) {
+
+        Iterator<Path> iterator = trie.iterator();
+
+        for (int i = 0; (i < walked) && iterator.hasNext(); i++) {
+
+            Path path = iterator.next();
+            assertTrue(expected.contains(path), "walked " + path);
+
+            if (random.nextInt(3) == 0) {
+
+                iterator.remove();
+                expected.remove(path);
+                assertThrows(IllegalStateException.class, iterator::remove);
+            }
+        }
+    }
+
+    private static Set<Path> iterate(PathTrieSet trie) {
+
+        Set<Path> paths = new HashSet<>();
+
+        for (Path path : trie) {
+
+            assertTrue(paths.add(path), "walked twice " + path);
+        }
+
+        return paths;
+    }
+}
@@ -0,0 +1,63 @@
+package com.app.beta;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * A CopyContext to run a CopyStrategy by itself in the tests: it is not
+ * resumable, is never stopped and counts the bytes copied and written.
+ */
+class TestCopyContext implements CopyContext {
+
+
+    private final int chunkSize;
+    final AtomicLong copiedBytes = new AtomicLong();
+    final AtomicLong writtenBytes = new AtomicLong();
+
+
+    TestCopyContext(int chunkSize) {
+
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean isStopped() {
+
+        return false;
+    }
+
+    @Override
+    public int getChunkSize() {
+
+        return chunkSize;
+    }
+
+    @Override
+    public void bytesCopied(long count, long written) {
+
+        copiedBytes.addAndGet(count);
+        writtenBytes.addAndGet(written);
+    }
+
+    @Override
+    public boolean isResumable() {
+
+        return false;
+    }
+
+    @Override
+    public long getResumePosition(Path source, BasicFileAttributes attrs) {
+
+        return 0L;
+    }
+
+    @Override
+    public void fileDigested(Path source, BasicFileAttributes attrs, String checksum) {
+    }
+
+    @Override
+    public void positionReached(Path source, BasicFileAttributes attrs, long position) {
+    }
+}
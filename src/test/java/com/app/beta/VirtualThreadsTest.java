@@ -0,0 +1,96 @@
+package com.app.beta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/*
+ * Checks the copy of a tree of small files by the worker threads and, on
+ * JDK 21 and later, by the virtual threads. The times of the two modes
+ * are compared by VirtualThreadsBenchmark.
+ */
+class VirtualThreadsTest {
+
+
+    private static final int FILES_COUNT = 2000;
+    private static final int FILES_PER_DIR = 100;
+
+    @TempDir
+    Path tempDir;
+
+
+    @Test
+    void copiesATreeOfSmallFiles()
+            throws Exception {
+
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Set<Path> files = createTree(sourceDir, FILES_COUNT);
+
+        copy(sourceDir, files, false);
+
+        if (VirtualThreads.isSupported()) {
+
+            copy(sourceDir, files, true);
+        }
+    }
+
+    @Test
+    void fallsBackToTheWorkersWhereNotSupported() {
+
+        CopyEngine engine = new CopyEngine(tempDir, tempDir.resolve("target"));
+        engine.setVirtualThreads(true);
+
+        assertEquals(VirtualThreads.isSupported(), engine.getVirtualThreads());
+    }
+
+    private void copy(Path sourceDir, Set<Path> files, boolean virtualThreads)
+            throws Exception {
+
+        Path targetDir = Files.createDirectory(
+                tempDir.resolve(virtualThreads ? "virtual" : "platform"));
+        CopyEngine engine = new CopyEngine(sourceDir, targetDir);
+        engine.setVirtualThreads(virtualThreads);
+
+        engine.copy(files, () -> false);
+
+        assertEquals(FILES_COUNT, engine.getCopiedFilesCount());
+        assertEquals(0L, engine.getErrorsCount());
+        assertArrayEquals(Files.readAllBytes(sourceDir.resolve("dir3/file345.txt")),
+                Files.readAllBytes(targetDir.resolve("dir3/file345.txt")));
+    }
+
+    /*
+     * Creates the files in directories of FILES_PER_DIR; returns the
+     * directories and the files, for the copy.
+     */
+    static Set<Path> createTree(Path sourceDir, int filesCount)
+            throws IOException {
+
+        Set<Path> paths = new HashSet<>();
+        paths.add(sourceDir);
+        Path dir = sourceDir;
+
+        for (int i = 0; i < filesCount; i++) {
+
+            if ((i % FILES_PER_DIR) == 0) {
+
+                dir = Files.createDirectory(sourceDir.resolve("dir" + (i / FILES_PER_DIR)));
+                paths.add(dir);
+            }
+
+            Path file = dir.resolve("file" + i + ".txt");
+            Files.write(file, ("file " + i).getBytes());
+            paths.add(file);
+        }
+
+        return paths;
+    }
+}